@@ -1,9 +1,16 @@
 package fr.grozeille.documentanalysis;
 
+import fr.grozeille.documentanalysis.service.AdaptiveBatchSize;
+import fr.grozeille.documentanalysis.service.BisectingRetry;
+import fr.grozeille.documentanalysis.service.ParallelFileWalker;
+import fr.grozeille.documentanalysis.service.ZipScanner;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @ConfigurationProperties(prefix = "document-analysis")
 @Data
@@ -13,4 +20,64 @@ public class ApplicationConfiguration {
     private String solrIndex;
 
     private String indexerPath;
+
+    private List<String> languages = new ArrayList<>();
+
+    private int languageDetectionMaxChars = 20000;
+
+    private boolean metadataFallback = false;
+
+    private int walkerParallelism = ParallelFileWalker.DEFAULT_PARALLELISM;
+
+    private int zipThreads = ZipScanner.DEFAULT_THREADS;
+
+    private long largeFileThreshold = ZipScanner.DEFAULT_IN_MEMORY_THRESHOLD;
+
+    private String parseCacheFile = "";
+
+    private long parseCacheMaxEntries = 100000;
+
+    private int solrBatchSize = 100;
+
+    private long solrBatchMaxBytes = AdaptiveBatchSize.DEFAULT_MAX_BYTES;
+
+    private long solrTargetLatency = AdaptiveBatchSize.DEFAULT_TARGET_LATENCY;
+
+    private int solrRetries = BisectingRetry.DEFAULT_RETRIES;
+
+    private int solrCommitWithin = 60000;
+
+    private String deadLetterFolder = "dead-letter";
+
+    private boolean blueGreenReindex = true;
+
+    private String solrConfigSet = "_default";
+
+    private long previousIndexRetentionSeconds = 600;
+
+    private int indexingMaxJobs = 2;
+
+    private int indexingQueueSize = 10;
+
+    private boolean watchEnabled = false;
+
+    private long watchDebounceMillis = 2000;
+
+    private long watchScanIntervalSeconds = 300;
+
+    private long searchCacheMaxEntries = 10000;
+
+    private long searchCacheTtlSeconds = 300;
+
+    private long searchCacheVersionCheckMillis = 1000;
+
+    private int searchMaxHighlightChars = 512;
+
+    private int searchMaxResponseChars = 65536;
+
+    private long tagsCommitWithin = 1000;
+
+    private int sameMaxRows = 100;
+
+    private double sameMinSimilarity = 0.5;
 }
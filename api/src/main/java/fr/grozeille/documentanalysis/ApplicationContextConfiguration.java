@@ -1,5 +1,10 @@
 package fr.grozeille.documentanalysis;
 
+import fr.grozeille.documentanalysis.service.DocumentParser;
+import fr.grozeille.documentanalysis.service.IndexSwitcher;
+import fr.grozeille.documentanalysis.service.LanguageDetectionService;
+import fr.grozeille.documentanalysis.service.ParseCache;
+import fr.grozeille.documentanalysis.service.SearchCache;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
@@ -15,6 +20,7 @@ import org.springframework.data.solr.server.support.EmbeddedSolrServerFactory;
 import org.springframework.data.solr.server.support.HttpSolrClientFactory;
 
 import java.io.File;
+import java.io.IOException;
 
 @Configuration
 @EnableSolrRepositories
@@ -37,4 +43,30 @@ public class ApplicationContextConfiguration {
     public SolrOperations solrTemplate() {
         return new SolrTemplate(solrClient());
     }
+
+    @Bean
+    public LanguageDetectionService languageDetectionService() throws IOException {
+        return new LanguageDetectionService(configuration.getLanguages(), configuration.getLanguageDetectionMaxChars());
+    }
+
+    @Bean
+    public DocumentParser documentParser() {
+        return new DocumentParser(configuration.isMetadataFallback());
+    }
+
+    @Bean
+    public IndexSwitcher indexSwitcher() {
+        return new IndexSwitcher(solrClient(), configuration.getSolrConfigSet(), configuration.getPreviousIndexRetentionSeconds());
+    }
+
+    @Bean
+    public ParseCache parseCache() {
+        return new ParseCache(configuration.getParseCacheFile(), configuration.getParseCacheMaxEntries());
+    }
+
+    @Bean
+    public SearchCache searchCache() {
+        return new SearchCache(solrClient(), configuration.getSolrIndex(), configuration.getSearchCacheMaxEntries(),
+                configuration.getSearchCacheTtlSeconds(), configuration.getSearchCacheVersionCheckMillis());
+    }
 }
@@ -1,5 +1,6 @@
 package fr.grozeille.documentanalysis.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 
 @Data
@@ -15,4 +16,8 @@ public class Document {
     private String body;
 
     private String[] tags;
+
+    // only for the same documents, 1 for a copy
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double similarity;
 }
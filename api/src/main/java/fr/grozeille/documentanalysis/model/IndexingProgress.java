@@ -0,0 +1,46 @@
+package fr.grozeille.documentanalysis.model;
+
+import lombok.Data;
+
+@Data
+public class IndexingProgress {
+    private String jobId;
+
+    private String path;
+
+    private boolean incremental;
+
+    /**
+     * Number of changed paths indexed by a job of the folder watcher, null for a walk of the whole folder.
+     */
+    private Integer changes;
+
+    private String status;
+
+    private String error;
+
+    private long startTime;
+
+    private long endTime;
+
+    private long filesFound;
+
+    private long filesSeen;
+
+    private long filesParsed;
+
+    private long documentsIndexed;
+
+    private long documentsUnchanged;
+
+    private long documentsFailed;
+
+    private long bytes;
+
+    private double documentsPerSecond;
+
+    /**
+     * Estimated remaining time (sec) from the files found so far, null until the first file is indexed.
+     */
+    private Long eta;
+}
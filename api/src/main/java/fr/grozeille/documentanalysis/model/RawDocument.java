@@ -8,5 +8,6 @@ import java.nio.ByteBuffer;
 public class RawDocument {
     private String path;
     private ByteBuffer body;
+    private String md5;
     private String lang;
 }
@@ -7,4 +7,9 @@ public class SearchResult {
     private Document[] documents;
 
     private long numFound;
+
+    /**
+     * Cursor of the next page, null when there are no more results.
+     */
+    private String nextCursor;
 }
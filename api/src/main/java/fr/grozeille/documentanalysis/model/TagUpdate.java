@@ -0,0 +1,20 @@
+package fr.grozeille.documentanalysis.model;
+
+import lombok.Data;
+
+/**
+ * Change of the tags of several documents: the ids, or all the results of a search query.
+ * The tags are replaced by set (when not null), then the tags of add are added and the tags of remove removed.
+ */
+@Data
+public class TagUpdate {
+    private String[] ids;
+
+    private String query;
+
+    private String[] set;
+
+    private String[] add;
+
+    private String[] remove;
+}
@@ -2,18 +2,31 @@ package fr.grozeille.documentanalysis.rest;
 
 import fr.grozeille.documentanalysis.ApplicationConfiguration;
 import fr.grozeille.documentanalysis.model.Document;
+import fr.grozeille.documentanalysis.model.IndexingProgress;
 import fr.grozeille.documentanalysis.model.SearchResult;
+import fr.grozeille.documentanalysis.model.TagUpdate;
+import fr.grozeille.documentanalysis.service.AdaptiveBatchSize;
 import fr.grozeille.documentanalysis.service.DocumentIndexer;
+import fr.grozeille.documentanalysis.service.DocumentTagger;
+import fr.grozeille.documentanalysis.service.IndexingJob;
+import fr.grozeille.documentanalysis.service.IndexingJobService;
+import fr.grozeille.documentanalysis.service.MinHash;
+import fr.grozeille.documentanalysis.service.SearchCache;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.solr.core.SolrOperations;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +35,7 @@ import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -29,6 +43,12 @@ import java.util.concurrent.TimeUnit;
 @RequestMapping("/api/v1/documents")
 public class DocumentController {
 
+    // the only stored fields read by toDocument, Solr doesn't send the bodies
+    static final String[] documentFields = new String[]{"id", "name_s", "path_descendent_path", "tags_ss"};
+
+    // plus what the similarity of a same document is computed from
+    static final String[] sameDocumentFields = new String[]{"id", "name_s", "path_descendent_path", "tags_ss", "md5_s", "minhash_s"};
+
     @Autowired
     private ApplicationConfiguration configuration;
 
@@ -38,73 +58,90 @@ public class DocumentController {
     @Autowired
     private DocumentIndexer documentIndexer;
 
+    @Autowired
+    private IndexingJobService indexingJobService;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    @Autowired
+    private DocumentTagger documentTagger;
+
     @PostConstruct
     public void init() {
     }
 
     @ApiOperation(
             value = "Search",
-            notes = "Search for documents")
+            notes = "Search for documents. The next pages are read with the nextCursor of the result " +
+                    "(the cost doesn't grow with the page number), or with the page number")
     @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
             method = RequestMethod.GET,
             value = "/")
-    public ResponseEntity<SearchResult> search(@RequestParam  String query, @RequestParam(defaultValue = "0") Integer page) throws IOException, SolrServerException {
+    public ResponseEntity<SearchResult> search(@RequestParam  String query, @RequestParam(defaultValue = "0") Integer page,
+                                               @RequestParam(required = false) String cursor) throws IOException, SolrServerException {
 
-        final int pageSize = 20;
+        String normalizedQuery = normalizeQuery(query);
 
-        query = query.toLowerCase();
+        String key = (cursor != null ? "cursor:" + cursor : "page:" + page) + ":" + normalizedQuery;
+        SearchResult searchResult = searchCache.get(key, () -> searchSolr(normalizedQuery, page, cursor));
 
-        String bodyQuery = "body_txt_en:"+query+" OR body_txt_fr:"+query;;
-        String nameQuery = "name_txt:"+query;
-        String pathQuery = "path_txt:"+query;
+        CacheControl cacheControl = CacheControl.maxAge(30, TimeUnit.SECONDS).cachePrivate();
 
-        SolrQuery solrQuery = new SolrQuery(String.join(" OR ", Arrays.asList(bodyQuery, nameQuery, pathQuery)));
+        return ResponseEntity
+                .status(200)
+                .lastModified(System.currentTimeMillis())
+                .cacheControl(cacheControl)
+                .body(searchResult);
+    }
+
+    private SearchResult searchSolr(String query, int page, String cursor) throws IOException, SolrServerException {
+
+        final int pageSize = 20;
+
+        SolrQuery solrQuery = buildSearchQuery(query);
         solrQuery.addHighlightField("body_txt_en");
         //solrQuery.addHighlightField("body_txt_sv");
         solrQuery.addHighlightField("name_txt");
         solrQuery.addHighlightField("path_txt");
         solrQuery.setHighlight(true);
-        solrQuery.setHighlightFragsize(512);
-        // priority to name and path
-        solrQuery.set("defType","edismax");
-        solrQuery.set("bq",String.join(" OR ", Arrays.asList(nameQuery, pathQuery)));
-        solrQuery.set("qf","body_txt_en^1.0 body_txt_fr^1.0 name_txt^4.0 path_txt^3.0");
-        solrQuery.setStart(page * pageSize);
+        solrQuery.setHighlightFragsize(configuration.getSearchMaxHighlightChars());
         solrQuery.setRows(pageSize);
+        solrQuery.setFields(documentFields);
+        // the id makes the order unique, required by the cursors
+        solrQuery.addSort(SolrQuery.SortClause.desc("score"));
+        solrQuery.addSort(SolrQuery.SortClause.asc("id"));
+        if(cursor != null) {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+        }
+        else if(page > 0) {
+            solrQuery.setStart(page * pageSize);
+        }
+        else {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, CursorMarkParams.CURSOR_MARK_START);
+        }
 
         QueryResponse response = solrOperations.getSolrClient().query(this.configuration.getSolrIndex(), solrQuery);
 
         Map<String, Document> resultMap = new LinkedHashMap<>();
         for(SolrDocument d : response.getResults()) {
-            Document document = new Document();
-            document.setId(d.get("id").toString());
-
-            document.setName(d.get("name_s").toString());
-            document.setUrl(d.get("path_descendent_path").toString());
-            document.setUrlTxt(document.getUrl());
-
-            Collection<Object> tags = d.getFieldValues("tags_ss");
-            List<String> documentTags = new ArrayList<>();
-            if(tags != null) {
-                for(Object t : tags) {
-                    documentTags.add(t.toString());
-                }
-            }
-            document.setTags(documentTags.toArray(new String[0]));
-
-            resultMap.put(d.get("id").toString(), document);
+            resultMap.put(d.get("id").toString(), toDocument(d));
         }
 
+        // the highlights of the page share the response size budget
+        int maxBodyChars = Math.min(configuration.getSearchMaxHighlightChars(),
+                configuration.getSearchMaxResponseChars() / Math.max(1, resultMap.size()));
+
         for(Map.Entry<String, Map<String, List<String>>> h : response.getHighlighting().entrySet()) {
             Document document = resultMap.get(h.getKey());
             List<String> highlights = h.getValue().get("body_txt_en");
             if(highlights != null && !highlights.isEmpty()) {
-                document.setBody(highlights.get(0));
+                document.setBody(truncateHighlight(highlights.get(0), maxBodyChars));
             }
             else {
                 highlights = h.getValue().get("body_txt_fr");
                 if(highlights != null && !highlights.isEmpty()) {
-                    document.setBody(highlights.get(0));
+                    document.setBody(truncateHighlight(highlights.get(0), maxBodyChars));
                 }
             }
 
@@ -121,14 +158,46 @@ public class DocumentController {
         SearchResult searchResult = new SearchResult();
         searchResult.setNumFound(response.getResults().getNumFound());
         searchResult.setDocuments(resultMap.values().toArray(new Document[0]));
+        // the cursor doesn't move at the end of the results
+        String nextCursor = response.getNextCursorMark();
+        if(nextCursor != null && !nextCursor.equals(solrQuery.get(CursorMarkParams.CURSOR_MARK_PARAM)) && resultMap.size() == pageSize) {
+            searchResult.setNextCursor(nextCursor);
+        }
 
-        CacheControl cacheControl = CacheControl.maxAge(30, TimeUnit.SECONDS).cachePrivate();
+        return searchResult;
+    }
 
-        return ResponseEntity
-                .status(200)
-                .lastModified(System.currentTimeMillis())
-                .cacheControl(cacheControl)
-                .body(searchResult);
+    /**
+     * The same query typed with other cases or spaces.
+     */
+    private static String normalizeQuery(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * Query of the search endpoint, also used to tag all the results of a search.
+     */
+    private static SolrQuery buildSearchQuery(String query) {
+        String bodyQuery = "body_txt_en:"+query+" OR body_txt_fr:"+query;
+        String nameQuery = "name_txt:"+query;
+        String pathQuery = "path_txt:"+query;
+
+        SolrQuery solrQuery = new SolrQuery(String.join(" OR ", Arrays.asList(bodyQuery, nameQuery, pathQuery)));
+        // priority to name and path
+        solrQuery.set("defType","edismax");
+        solrQuery.set("bq",String.join(" OR ", Arrays.asList(nameQuery, pathQuery)));
+        solrQuery.set("qf","body_txt_en^1.0 body_txt_fr^1.0 name_txt^4.0 path_txt^3.0");
+        return solrQuery;
+    }
+
+    @ApiOperation(
+            value = "Search cache statistics",
+            notes = "Hit ratio of the search cache, average latency of the searches answered by the cache and by Solr")
+    @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.GET,
+            value = "/search/stats")
+    public @ResponseBody SearchCache.Stats searchStats() {
+        return searchCache.getStats();
     }
 
     @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
@@ -137,25 +206,13 @@ public class DocumentController {
     public @ResponseBody ResponseEntity<Document> getDocument(@PathVariable String id) throws IOException, SolrServerException {
 
         try {
-            SolrDocument d = solrOperations.getSolrClient().getById(this.configuration.getSolrIndex(), id);
-
-            Document document = new Document();
-            document.setId(d.get("id").toString());
-
-            document.setName(d.get("name_s").toString());
-            document.setUrl(d.get("path_descendent_path").toString());
-            document.setUrlTxt(document.getUrl());
-            document.setBody("");
-
-            Collection<Object> tags = d.getFieldValues("tags_ss");
-            List<String> documentTags = new ArrayList<>();
-            if(tags != null) {
-                for(Object t : tags) {
-                    documentTags.add(t.toString());
-                }
+            SolrDocument d = solrOperations.getSolrClient().getById(this.configuration.getSolrIndex(), id, fields(documentFields));
+            if(d == null) {
+                return ResponseEntity.notFound().build();
             }
-            document.setTags(documentTags.toArray(new String[0]));
 
+            Document document = toDocument(d);
+            document.setBody("");
 
             return ResponseEntity.ok(document);
         } catch(SolrServerException e) {
@@ -169,64 +226,102 @@ public class DocumentController {
             value = "/{id}/tags")
     public @ResponseBody ResponseEntity<?> updateTags(@PathVariable String id, @RequestBody String[] tags) throws IOException, SolrServerException {
         try {
-            SolrDocument d = solrOperations.getSolrClient().getById(this.configuration.getSolrIndex(), id);
-
-            SolrInputDocument inputDocument = new SolrInputDocument();
-            for (String fieldName : d.getFieldNames()) {
-                inputDocument.addField(fieldName, d.getFieldValue(fieldName));
+            if(!documentTagger.setTags(id, tags)) {
+                return ResponseEntity.notFound().build();
             }
 
-            inputDocument.removeField("tags_ss");
-            for(String t : tags) {
-                inputDocument.addField("tags_ss", t);
-            }
-
-            solrOperations.getSolrClient().add(this.configuration.getSolrIndex(), inputDocument);
-            solrOperations.commit(this.configuration.getSolrIndex());
-
             return ResponseEntity.ok().build();
         } catch(SolrServerException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    @ApiOperation(
+            value = "Tag documents",
+            notes = "Same change of the tags (set, add, remove) for a list of ids or all the results of a search query, " +
+                    "returns the number of documents updated")
+    @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.POST,
+            value = "/tags")
+    public @ResponseBody ResponseEntity<Long> updateTags(@RequestBody TagUpdate tagUpdate) throws IOException, SolrServerException {
+        SolrQuery solrQuery;
+        if(tagUpdate.getIds() != null && tagUpdate.getIds().length > 0) {
+            solrQuery = new SolrQuery("{!terms f=id}" + String.join(",", tagUpdate.getIds()));
+        }
+        else if(tagUpdate.getQuery() != null && !tagUpdate.getQuery().trim().isEmpty()) {
+            solrQuery = buildSearchQuery(normalizeQuery(tagUpdate.getQuery()));
+        }
+        else {
+            return ResponseEntity.badRequest().build();
+        }
+
+        long updated = documentTagger.update(solrQuery, tagUpdate.getSet(), tagUpdate.getAdd(), tagUpdate.getRemove());
+        return ResponseEntity.ok(updated);
+    }
+
+    @ApiOperation(
+            value = "Same documents",
+            notes = "Copies (same content) and near duplicates (similar text) of a document, the most similar first. " +
+                    "Found with the MinHash bands indexed with the documents, not by comparing the document to all the others")
     @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
         method = RequestMethod.GET,
         value = "/{id}/same")
-    public @ResponseBody ResponseEntity<SearchResult> getSameDocument(@PathVariable String id) throws IOException, SolrServerException {
+    public @ResponseBody ResponseEntity<SearchResult> getSameDocument(@PathVariable String id, @RequestParam(defaultValue = "20") int rows) throws IOException, SolrServerException {
 
         try {
-            SolrDocument foundDocument = solrOperations.getSolrClient().getById(this.configuration.getSolrIndex(), id);
+            SolrDocument foundDocument = solrOperations.getSolrClient().getById(this.configuration.getSolrIndex(), id, fields("id", "md5_s", "minhash_s", "lsh_ss"));
+            if(foundDocument == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            String md5 = (String) foundDocument.getFieldValue("md5_s");
+            int[] signature = MinHash.decode((String) foundDocument.getFieldValue("minhash_s"));
+            Collection<Object> bands = foundDocument.getFieldValues("lsh_ss");
+
+            // the copies first, then the documents sharing the most bands
+            List<String> clauses = new ArrayList<>();
+            if(md5 != null) {
+                clauses.add("md5_s:" + ClientUtils.escapeQueryChars(md5) + "^" + MinHash.BANDS);
+            }
+            if(signature != null && bands != null) {
+                for(Object band : bands) {
+                    clauses.add("lsh_ss:" + ClientUtils.escapeQueryChars(band.toString()));
+                }
+            }
+            if(clauses.isEmpty()) {
+                return ResponseEntity.ok(new SearchResult());
+            }
 
-            SolrQuery solrQuery = new SolrQuery("name_s:\""+foundDocument.getFieldValue("name_s").toString()+"\"");
+            SolrQuery solrQuery = new SolrQuery(String.join(" OR ", clauses));
+            solrQuery.addFilterQuery("-id:" + ClientUtils.escapeQueryChars(id));
+            solrQuery.setRows(Math.max(1, Math.min(rows, configuration.getSameMaxRows())));
+            solrQuery.setFields(sameDocumentFields);
             QueryResponse response = solrOperations.getSolrClient().query(this.configuration.getSolrIndex(), solrQuery);
 
             List<Document> documents = new ArrayList<>();
             for(SolrDocument d : response.getResults()) {
-                Document document = new Document();
-                document.setId(d.get("id").toString());
-
-                document.setName(d.get("name_s").toString());
-                document.setUrl(d.get("path_descendent_path").toString());
-                document.setUrlTxt(document.getUrl());
-                document.setBody("");
-
-                Collection<Object> tags = d.getFieldValues("tags_ss");
-                List<String> documentTags = new ArrayList<>();
-                if(tags != null) {
-                    for(Object t : tags) {
-                        documentTags.add(t.toString());
-                    }
+                double similarity;
+                if(md5 != null && md5.equals(d.getFieldValue("md5_s"))) {
+                    similarity = 1.0;
                 }
-                document.setTags(documentTags.toArray(new String[0]));
-
-                if(!document.getId().equalsIgnoreCase(id)) {
-                    documents.add(document);
+                else {
+                    int[] otherSignature = MinHash.decode((String) d.getFieldValue("minhash_s"));
+                    similarity = signature != null && otherSignature != null ? MinHash.similarity(signature, otherSignature) : 0.0;
                 }
+                // a shared band can be a false positive
+                if(similarity < configuration.getSameMinSimilarity()) {
+                    continue;
+                }
+
+                Document document = toDocument(d);
+                document.setBody("");
+                document.setSimilarity(similarity);
+                documents.add(document);
             }
+            documents.sort(Comparator.comparing(Document::getSimilarity).reversed());
 
             SearchResult result = new SearchResult();
-            result.setNumFound(response.getResults().getNumFound());
+            result.setNumFound(documents.size());
             result.setDocuments(documents.toArray(new Document[0]));
 
             return ResponseEntity.ok(result);
@@ -236,17 +331,115 @@ public class DocumentController {
 
     }
 
+    @ApiOperation(
+            value = "Index",
+            notes = "Submit an indexing job for a folder, running in the background. " +
+                    "A sub folder of the indexer path only replaces the documents under this sub folder")
     @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
             method = RequestMethod.POST,
             value = "/index")
-    public void index(@RequestParam  String path) throws IOException, InterruptedException, SolrServerException {
-        long startDate = System.currentTimeMillis();
+    public ResponseEntity<IndexingProgress> index(@RequestParam  String path, @RequestParam(defaultValue = "false") boolean incremental) {
+        try {
+            IndexingJob job = indexingJobService.submit(path, this.configuration.getSolrIndex(), incremental);
+            return ResponseEntity.accepted().body(job.getProgress());
+        } catch(IllegalStateException e) {
+            log.warn(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch(RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
 
-        documentIndexer.indexPath(path, this.configuration.getSolrIndex());
+    @ApiOperation(
+            value = "Indexing jobs",
+            notes = "Progress of the running and last finished indexing jobs")
+    @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.GET,
+            value = "/index/jobs")
+    public @ResponseBody List<IndexingProgress> indexingJobs() {
+        List<IndexingProgress> progresses = new ArrayList<>();
+        for(IndexingJob job : indexingJobService.list()) {
+            progresses.add(job.getProgress());
+        }
+        return progresses;
+    }
 
-        long executionTime = System.currentTimeMillis()-startDate;
+    @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.GET,
+            value = "/index/jobs/{jobId}")
+    public ResponseEntity<IndexingProgress> indexingJob(@PathVariable String jobId) {
+        IndexingJob job = indexingJobService.get(jobId);
+        if(job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.getProgress());
+    }
 
-        log.info("Index finished in " + (executionTime / 1000.0) + " sec");
+    @ApiOperation(
+            value = "Cancel indexing job",
+            notes = "Stop an indexing job, a rebuilt index is not swapped and an incremental indexation doesn't delete anything")
+    @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.DELETE,
+            value = "/index/jobs/{jobId}")
+    public ResponseEntity<IndexingProgress> cancelIndexingJob(@PathVariable String jobId) {
+        IndexingJob job = indexingJobService.get(jobId);
+        if(job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        job.cancel();
+        return ResponseEntity.ok(job.getProgress());
     }
 
+    @ApiOperation(
+            value = "Indexing stats",
+            notes = "Current size of the batches sent to Solr, average bytes and latency per request")
+    @RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.GET,
+            value = "/index/stats")
+    public @ResponseBody AdaptiveBatchSize.Stats indexStats() {
+        return documentIndexer.getBatchStats();
+    }
+
+    private static Document toDocument(SolrDocument d) {
+        Document document = new Document();
+        document.setId(d.get("id").toString());
+
+        document.setName(d.get("name_s").toString());
+        document.setUrl(d.get("path_descendent_path").toString());
+        document.setUrlTxt(document.getUrl());
+
+        Collection<Object> tags = d.getFieldValues("tags_ss");
+        List<String> documentTags = new ArrayList<>();
+        if(tags != null) {
+            for(Object t : tags) {
+                documentTags.add(t.toString());
+            }
+        }
+        document.setTags(documentTags.toArray(new String[0]));
+
+        return document;
+    }
+
+    private static SolrParams fields(String... fields) {
+        return new ModifiableSolrParams().set(CommonParams.FL, String.join(",", fields));
+    }
+
+    /**
+     * Cuts a highlight fragment to maxChars without cutting a tag, the highlight tags stay balanced.
+     */
+    static String truncateHighlight(String fragment, int maxChars) {
+        if(fragment.length() <= maxChars) {
+            return fragment;
+        }
+        // room for the closing tag and the ellipsis
+        String truncated = fragment.substring(0, Math.max(0, maxChars - "</em>…".length()));
+        int tagStart = truncated.lastIndexOf('<');
+        if(tagStart > truncated.lastIndexOf('>')) {
+            truncated = truncated.substring(0, tagStart);
+        }
+        if(truncated.lastIndexOf("<em>") > truncated.lastIndexOf("</em>")) {
+            truncated += "</em>";
+        }
+        return truncated + "…";
+    }
 }
@@ -0,0 +1,90 @@
+package fr.grozeille.documentanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sends a batch to Solr with retries, so one bad document or a slow Solr doesn't fail a whole run:
+ * <ul>
+ *     <li>the transient errors (connection errors, 5xx, 429) are retried with an exponential backoff</li>
+ *     <li>a batch rejected by Solr (4xx) is split in two halves sent separately, until the bad documents are alone</li>
+ *     <li>a document rejected alone, or a batch still failing with transient errors after the retries,
+ *     goes to the dead letter file: splitting it would only wait for the same outage again</li>
+ * </ul>
+ */
+@Slf4j
+public class BisectingRetry {
+
+    public static final int DEFAULT_RETRIES = 5;
+
+    public static final long DEFAULT_BACKOFF = 1000;
+
+    private static final long maxBackoff = 60000;
+
+    public interface Sender {
+        void send(List<SolrInputDocument> documents) throws IOException, SolrServerException;
+    }
+
+    private final int retries;
+
+    private final long backoff;
+
+    private final DeadLetterFile deadLetterFile;
+
+    public BisectingRetry(int retries, long backoff, DeadLetterFile deadLetterFile) {
+        this.retries = retries;
+        this.backoff = backoff;
+        this.deadLetterFile = deadLetterFile;
+    }
+
+    /**
+     * @return the number of documents written to the dead letter file
+     */
+    public int send(List<SolrInputDocument> documents, Sender sender) throws IOException, InterruptedException {
+        Exception error = null;
+        for(int attempt = 0; attempt <= retries; attempt++) {
+            if(attempt > 0) {
+                long wait = Math.min(maxBackoff, backoff << Math.min(attempt - 1, 20));
+                wait += ThreadLocalRandom.current().nextLong(wait / 2 + 1);
+                log.warn("Retry " + attempt + "/" + retries + " of a batch of " + documents.size() + " documents in " + wait + "ms: " + error.getMessage());
+                Thread.sleep(wait);
+            }
+            try {
+                sender.send(documents);
+                return 0;
+            }
+            catch(SolrException ex) {
+                // Solr answered: the batch is rejected, retrying the same content won't help
+                error = ex;
+                if(!isTransient(ex)) {
+                    break;
+                }
+            }
+            catch(IOException | SolrServerException | RuntimeException ex) {
+                error = ex;
+            }
+        }
+
+        if(error instanceof SolrException && !isTransient((SolrException) error) && documents.size() > 1) {
+            int middle = documents.size() / 2;
+            log.warn("Batch of " + documents.size() + " documents rejected, sent again in two halves: " + error.getMessage());
+            return send(documents.subList(0, middle), sender) + send(documents.subList(middle, documents.size()), sender);
+        }
+
+        log.error("Unable to index " + documents.size() + " documents, first one: " + documents.get(0).getFieldValue("path_txt"), error);
+        for(SolrInputDocument document : documents) {
+            deadLetterFile.write(document, error);
+        }
+        return documents.size();
+    }
+
+    private static boolean isTransient(SolrException ex) {
+        return ex.code() >= 500 || ex.code() == 429;
+    }
+}
@@ -0,0 +1,93 @@
+package fr.grozeille.documentanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Avro file of the documents rejected by Solr, created on the first failure.
+ * Same FailedDocument schema as the indexer, the file can be indexed again with the indexer's DocumentIndexer.
+ */
+@Slf4j
+public class DeadLetterFile implements Closeable {
+
+    private static final Schema schema = readSchema();
+
+    private final File file;
+
+    private DataFileWriter<GenericRecord> dataFileWriter = null;
+
+    private long count = 0;
+
+    public DeadLetterFile(File folder) {
+        this.file = new File(folder, "failed-" + System.currentTimeMillis() + ".avro");
+    }
+
+    private static Schema readSchema() {
+        try(InputStream stream = DeadLetterFile.class.getResourceAsStream("/avro/failed_document_schema.avsc")) {
+            return new Schema.Parser().parse(stream);
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public synchronized void write(SolrInputDocument document, Exception error) throws IOException {
+        if(dataFileWriter == null) {
+            file.getParentFile().mkdirs();
+            dataFileWriter = new DataFileWriter<>(new GenericDatumWriter<>(schema));
+            dataFileWriter.create(schema, file);
+        }
+
+        Map<String, List<String>> fields = new HashMap<>();
+        for(SolrInputField field : document) {
+            List<String> values = new ArrayList<>();
+            for(Object value : field) {
+                values.add(String.valueOf(value));
+            }
+            fields.put(field.getName(), values);
+        }
+
+        Object id = document.getFieldValue("id");
+        GenericRecord record = new GenericData.Record(schema);
+        record.put("id", id != null ? id.toString() : "");
+        record.put("fields", fields);
+        record.put("error", String.valueOf(error));
+        record.put("time", System.currentTimeMillis());
+        dataFileWriter.append(record);
+        // the failed documents must not be lost if the application is stopped later
+        dataFileWriter.flush();
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(dataFileWriter != null) {
+            dataFileWriter.close();
+            log.warn(count + " documents not indexed, written to " + file.getAbsolutePath());
+        }
+    }
+}
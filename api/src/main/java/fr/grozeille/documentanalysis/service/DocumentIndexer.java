@@ -1,32 +1,21 @@
 package fr.grozeille.documentanalysis.service;
 
 import com.google.common.base.Strings;
+import fr.grozeille.documentanalysis.ApplicationConfiguration;
 import fr.grozeille.documentanalysis.model.ExtractDocument;
 import fr.grozeille.documentanalysis.model.ParsedDocument;
 import fr.grozeille.documentanalysis.model.RawDocument;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentInformation;
-import org.apache.poi.hpsf.PropertySetFactory;
-import org.apache.poi.hpsf.SummaryInformation;
-import org.apache.poi.ooxml.POIXMLProperties;
-import org.apache.poi.xslf.usermodel.XMLSlideShow;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
 import org.apache.solr.common.SolrInputDocument;
-import org.apache.tika.Tika;
-import org.apache.tika.langdetect.OptimaizeLangDetector;
-import org.apache.tika.language.detect.LanguageDetector;
 import org.apache.tika.language.detect.LanguageResult;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.sax.ExpandedTitleContentHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.solr.core.SolrOperations;
 import org.springframework.stereotype.Service;
@@ -35,18 +24,16 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
+import javax.annotation.PostConstruct;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.SimpleDateFormat;
+import java.security.DigestInputStream;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 @Slf4j
 @Service
@@ -60,98 +47,301 @@ public class DocumentIndexer {
             "doc", "docx", "xls", "xlsx", "ppt", "pptx", "pdf"
     };
 
-    private static final int batchSize = 100;
+    private static final int deleteBatchSize = 1000;
+
+    @Autowired
+    private ApplicationConfiguration configuration;
 
     @Autowired
     private SolrOperations solrOperations;
 
-    private List<SolrInputDocument> solrBatch = new ArrayList<>();
+    @Autowired
+    private LanguageDetectionService languageDetectionService;
+
+    @Autowired
+    private DocumentParser documentParser;
+
+    @Autowired
+    private ParseCache parseCache;
+
+    @Autowired
+    private IndexSwitcher indexSwitcher;
+
+    @Autowired
+    private SearchCache searchCache;
 
-    public void indexPath(String inputPath, String index) throws IOException, SolrServerException {
-        List<String> pathList = new ArrayList<>();
-        pathList.add(new File(inputPath).toString());
-        pathList.addAll(scanSubfolders(inputPath));
-        log.info("Folders to analyse:");
-        pathList.forEach(log::info);
+    // shared by the jobs, it depends on the load of Solr
+    private AdaptiveBatchSize batchSize;
 
-        // clear the index
-        solrOperations.getSolrClient().deleteByQuery(index, "*:*");
+    @PostConstruct
+    public void init() {
+        batchSize = new AdaptiveBatchSize(configuration.getSolrBatchSize(), configuration.getSolrBatchMaxBytes(), configuration.getSolrTargetLatency());
+    }
 
-        // list all files to write in avro
-        for (String path : pathList) {
+    public AdaptiveBatchSize.Stats getBatchStats() {
+        return batchSize.getStats();
+    }
 
-            File pathFile = new File(path);
-            File[] files = pathFile.listFiles();
-            if(files == null){
-                continue;
+    /**
+     * Runs the job in the calling thread.
+     * Not incremental: the index is rebuilt, incremental: only the new and modified documents are sent
+     * and the documents not on the disk anymore are deleted.
+     * The batches are only made visible by commitWithin, a single commit is done at the end of the job.
+     */
+    public void index(IndexingJob job) throws IOException, SolrServerException {
+        String index = job.getIndex();
+        if(job.getChanges() != null) {
+            indexChanges(job, index);
+            commit(index);
+        }
+        else if(!job.isIncremental() && configuration.isBlueGreenReindex()) {
+            // the live index keeps serving the searches during the rebuild
+            String buildIndex = indexSwitcher.createBuildIndex(index);
+            try {
+                indexPath(job, buildIndex, false);
+                solrOperations.getSolrClient().commit(buildIndex);
+            }
+            catch(IOException | SolrServerException | RuntimeException ex) {
+                indexSwitcher.drop(buildIndex);
+                throw ex;
             }
+            indexSwitcher.swap(index, buildIndex);
+            searchCache.invalidate(index);
+        }
+        else {
+            indexPath(job, index, !job.isIncremental());
+            commit(index);
+        }
+    }
 
-            for (File child : files) {
-                if (child.isFile()) {
+    private void commit(String index) throws IOException, SolrServerException {
+        solrOperations.getSolrClient().commit(index);
+        searchCache.invalidate(index);
+    }
 
-                    if(isBlacklisted(child)){
-                        continue;
-                    }
+    private void indexPath(IndexingJob job, String index, boolean clear) throws IOException, SolrServerException {
+        String inputPath = job.getPath();
+        if(job.isIncremental()) {
+            job.snapshot = SolrSnapshot.load(solrOperations.getSolrClient(), index);
+        }
+        else if(clear) {
+            solrOperations.getSolrClient().deleteByQuery(index, "*:*");
+        }
 
-                    String extension = FilenameUtils.getExtension(child.getAbsolutePath());
+        // the folders are scanned in parallel while the files are indexed
+        try (DeadLetterFile deadLetterFile = new DeadLetterFile(new File(configuration.getDeadLetterFolder()));
+             ParallelFileWalker walker = new ParallelFileWalker(Paths.get(inputPath), configuration.getWalkerParallelism());
+             ZipScanner zipScanner = new ZipScanner(configuration.getZipThreads(), configuration.getLargeFileThreshold())) {
+            job.retry = new BisectingRetry(configuration.getSolrRetries(), BisectingRetry.DEFAULT_BACKOFF, deadLetterFile);
+            job.setWalker(walker);
 
-                    if ("zip".equalsIgnoreCase(extension)) {
+            for (ParallelFileWalker.FileEntry fileEntry : walker) {
+                job.checkCancelled();
+                indexFile(job, zipScanner, index, inputPath, fileEntry.toFile(), fileEntry.getAttributes().size());
+            }
+            // the walk also ends when the thread is interrupted, the files not seen must not be deleted
+            job.checkCancelled();
+            keepFailedPaths(job, index, inputPath, walker);
 
-                        try (InputStream stream = new FileInputStream(child)) {
-                            ZipArchiveInputStream zis = new ZipArchiveInputStream(stream);
+            if(job.solrBatch.size() > 0) {
+                sendBatch(job, index);
+            }
+        }
 
-                            scanZipArchive(index, inputPath, child.getAbsolutePath(), zis);
-                        }
-                    } else {
-                        if(isWhitelisted(child.getName())) {
-                            RawDocument rawDocument = toDocument(inputPath, child);
-                            parseAndIndex(index, rawDocument);
+        deleteUnchecked(job, index);
+
+        log.info("Parse cache: " + parseCache.getHits() + " hits, " + parseCache.getMisses() + " misses");
+    }
+
+    /**
+     * Only the changed files, zip files and folders are indexed again (all their documents when not incremental),
+     * the documents under these paths not on the disk anymore are deleted.
+     */
+    private void indexChanges(IndexingJob job, String index) throws IOException, SolrServerException {
+        String inputPath = job.getPath();
+        job.snapshot = SolrSnapshot.load(solrOperations.getSolrClient(), index, job.getChanges());
+
+        try (DeadLetterFile deadLetterFile = new DeadLetterFile(new File(configuration.getDeadLetterFolder()));
+             ZipScanner zipScanner = new ZipScanner(configuration.getZipThreads(), configuration.getLargeFileThreshold())) {
+            job.retry = new BisectingRetry(configuration.getSolrRetries(), BisectingRetry.DEFAULT_BACKOFF, deadLetterFile);
+
+            for(String change : job.getChanges()) {
+                job.checkCancelled();
+                File file = new File(inputPath, change);
+                if(file.isDirectory()) {
+                    // a new folder, or the events of a folder were lost
+                    try(ParallelFileWalker walker = new ParallelFileWalker(file.toPath(), configuration.getWalkerParallelism())) {
+                        job.setWalker(walker);
+                        for (ParallelFileWalker.FileEntry fileEntry : walker) {
+                            job.checkCancelled();
+                            indexFile(job, zipScanner, index, inputPath, fileEntry.toFile(), fileEntry.getAttributes().size());
                         }
+                        job.checkCancelled();
+                        keepFailedPaths(job, index, inputPath, walker);
                     }
                 }
+                else if(file.isFile()) {
+                    indexFile(job, zipScanner, index, inputPath, file, file.length());
+                }
             }
-        }
 
-        if(solrBatch.size() > 0) {
-            solrOperations.getSolrClient().add(index, solrBatch);
-            solrOperations.getSolrClient().commit(index);
+            if(job.solrBatch.size() > 0) {
+                sendBatch(job, index);
+            }
         }
+
+        deleteUnchecked(job, index);
     }
 
-    private void parseAndIndex(String index, RawDocument rawDocument) throws IOException {
+    private void indexFile(IndexingJob job, ZipScanner zipScanner, String index, String inputPath, File child, long size) throws IOException {
+        job.filesSeen.incrementAndGet();
 
-        LanguageDetector detector = new OptimaizeLangDetector().loadModels();
+        if(isBlacklisted(child)){
+            return;
+        }
 
-        ParsedDocument outputDocument = new ParsedDocument();
+        if (ZipScanner.isZip(child.getName())) {
+            job.bytes.addAndGet(size);
+            scanZipArchive(job, zipScanner, index, inputPath, child);
+        } else if(isWhitelisted(child.getName())) {
+            job.bytes.addAndGet(size);
+            if(size > configuration.getLargeFileThreshold()) {
+                parseAndIndex(job, index, relativePath(inputPath, child.getAbsolutePath()), () -> new FileInputStream(child));
+            }
+            else {
+                RawDocument rawDocument = toDocument(inputPath, child);
+                parseAndIndex(job, index, rawDocument);
+            }
+        }
+    }
+
+    /**
+     * Incremental indexation: the documents of the snapshot not found on the disk are deleted.
+     */
+    private void deleteUnchecked(IndexingJob job, String index) throws IOException, SolrServerException {
+        if(job.snapshot != null) {
+            List<String> deletedIds = job.snapshot.getUncheckedIds();
+            log.info(job.documentsUnchanged.get() + " documents unchanged, " + deletedIds.size() + " deleted");
+            for(int i = 0; i < deletedIds.size(); i += deleteBatchSize) {
+                UpdateRequest request = new UpdateRequest();
+                request.deleteById(deletedIds.subList(i, Math.min(deletedIds.size(), i + deleteBatchSize)));
+                request.setCommitWithin(configuration.getSolrCommitWithin());
+                request.process(solrOperations.getSolrClient(), index);
+            }
+            job.snapshot = null;
+        }
+    }
+
+    private void parseAndIndex(IndexingJob job, String index, RawDocument rawDocument) throws IOException {
         String path = rawDocument.getPath();
+        String md5 = rawDocument.getMd5().toUpperCase();
 
-        outputDocument.setPath(path);
-        File inputDocumentFile = new File(path);
-        outputDocument.setName(inputDocumentFile.getName());
-        outputDocument.setExtension(FilenameUtils.getExtension(inputDocumentFile.getName()));
+        if(isUnchanged(job, path, md5)) {
+            return;
+        }
 
-        // parse the body
-        ByteBuffer byteBody = (ByteBuffer) rawDocument.getBody();
+        // the copies of a document are only parsed once
+        ParseCache.Entry extraction = parseCache.get(md5);
+        if(extraction == null) {
+            ByteBuffer byteBody = (ByteBuffer) rawDocument.getBody();
+            extraction = extract(path, documentParser.parseBody(path, byteBody.array()));
+            parseCache.put(md5, extraction);
+        }
+        job.filesParsed.incrementAndGet();
 
-        String md5 = DigestUtils.md5Hex(byteBody.array()).toUpperCase();
-        outputDocument.setMd5(md5);
+        indexParsed(job, index, path, md5, extraction);
+    }
+
+    private interface StreamSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Large document: parsed and hashed in a single pass over the stream, without reading it in memory.
+     * An incremental indexation reads it twice: it is hashed first, so the unchanged documents
+     * and the copies already in the parse cache are not parsed.
+     */
+    private void parseAndIndex(IndexingJob job, String index, String path, StreamSource source) throws IOException {
+        String md5;
+        ParseCache.Entry extraction;
+        if(job.isIncremental() && job.snapshot != null) {
+            try(InputStream stream = source.open()) {
+                md5 = DigestUtils.md5Hex(stream).toUpperCase();
+            }
+            if(isUnchanged(job, path, md5)) {
+                return;
+            }
 
-        ExtractDocument extractDocument = parseBody(path, byteBody.array());
+            extraction = parseCache.get(md5);
+            if(extraction == null) {
+                try(InputStream stream = source.open()) {
+                    extraction = extract(path, documentParser.parseBody(path, stream));
+                }
+                parseCache.put(md5, extraction);
+            }
+        }
+        else {
+            try(DigestInputStream digestStream = new DigestInputStream(source.open(), DigestUtils.getMd5Digest())) {
+                ExtractDocument extractDocument = documentParser.parseBody(path, digestStream);
+                // the parser may stop before the end of the stream
+                IOUtils.copy(digestStream, NullOutputStream.NULL_OUTPUT_STREAM);
+
+                // the md5 is only known at the end of the stream, the result is cached for the smaller copies
+                md5 = Hex.encodeHexString(digestStream.getMessageDigest().digest()).toUpperCase();
+                if(isUnchanged(job, path, md5)) {
+                    return;
+                }
+                extraction = extract(path, extractDocument);
+                parseCache.put(md5, extraction);
+            }
+        }
+        job.filesParsed.incrementAndGet();
+
+        indexParsed(job, index, path, md5, extraction);
+    }
+
+    /**
+     * Incremental indexation: the document is already indexed with the same content.
+     * The document is checked in the snapshot even when it is indexed again, so it is not deleted at the end.
+     */
+    private boolean isUnchanged(IndexingJob job, String path, String md5) {
+        if(job.snapshot != null && job.snapshot.isUnchanged(toId(path), md5) && job.isIncremental()) {
+            job.documentsUnchanged.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private ParseCache.Entry extract(String path, ExtractDocument extractDocument) {
         String body = extractDocument.getHtmlBody();
-        outputDocument.setBody(body);
-        outputDocument.setLang("");
+        String lang = "";
 
         // detect the lang
-        LanguageResult result = detector.detect(body);
+        LanguageResult result = languageDetectionService.detect(body);
         if(result.isReasonablyCertain()) {
-            outputDocument.setLang(result.getLanguage());
+            lang = result.getLanguage();
         }
         else {
             log.warn("Unable to detect language " + path);
         }
 
+        return new ParseCache.Entry(body, lang, new HashMap<>(extractDocument.getMetadata()));
+    }
+
+    private void indexParsed(IndexingJob job, String index, String path, String md5, ParseCache.Entry extraction) {
+
+        ParsedDocument outputDocument = new ParsedDocument();
+
+        outputDocument.setPath(path);
+        File inputDocumentFile = new File(path);
+        outputDocument.setName(inputDocumentFile.getName());
+        outputDocument.setExtension(FilenameUtils.getExtension(inputDocumentFile.getName()));
+        outputDocument.setMd5(md5);
+        outputDocument.setBody(extraction.getHtmlBody());
+        outputDocument.setLang(extraction.getLang());
+
         try {
-            indexToSolr(index, outputDocument);
+            indexToSolr(job, index, outputDocument);
         }
         catch(Exception ex) {
             log.info(outputDocument.getName());
@@ -159,8 +349,8 @@ public class DocumentIndexer {
         }
     }
 
-    private void indexToSolr(String index, ParsedDocument inputDocument) throws IOException, SolrServerException {
-        String id = DigestUtils.sha256Hex(inputDocument.getPath());
+    private void indexToSolr(IndexingJob job, String index, ParsedDocument inputDocument) throws IOException, SolrServerException {
+        String id = toId(inputDocument.getPath());
 
         SolrInputDocument solrDocument = new SolrInputDocument();
         String path = inputDocument.getPath();
@@ -196,58 +386,160 @@ public class DocumentIndexer {
         if(!Strings.isNullOrEmpty(lang)) {
             solrDocument.addField("body_txt_"+lang, bodyText);
         }
-        solrBatch.add(solrDocument);
+        // near duplicates, see MinHash
+        int[] signature = MinHash.signature(bodyText);
+        if(signature != null) {
+            solrDocument.addField("minhash_s", MinHash.encode(signature));
+            solrDocument.addField("lsh_ss", MinHash.bands(signature));
+        }
+        long documentBytes = AdaptiveBatchSize.sizeOf(solrDocument);
+        if(batchSize.isOverflow(job.solrBatch.size(), job.solrBatchBytes, documentBytes)) {
+            sendBatch(job, index);
+        }
+
+        job.solrBatch.add(solrDocument);
+        job.solrBatchBytes += documentBytes;
 
-        if(solrBatch.size() >= batchSize) {
-            solrOperations.getSolrClient().add(index, solrBatch);
-            solrOperations.getSolrClient().commit(index);
-            solrBatch = new ArrayList<>();
+        if(batchSize.isFull(job.solrBatch.size(), job.solrBatchBytes)) {
+            sendBatch(job, index);
         }
     }
 
-    private void scanZipArchive(String index, String rootPath, String parentPath, ZipArchiveInputStream zis) throws IOException {
+    private void sendBatch(IndexingJob job, String index) throws IOException, SolrServerException {
+        List<SolrInputDocument> documents = job.solrBatch;
+        long bytes = job.solrBatchBytes;
+        job.solrBatch = new ArrayList<>();
+        job.solrBatchBytes = 0;
 
-        log.debug("Scan zip file: "+parentPath);
+        int failed;
         try {
-            ArchiveEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory()) {
+            failed = job.retry.send(documents, batch -> {
+                try {
+                    UpdateRequest request = new UpdateRequest();
+                    request.add(batch);
+                    request.setCommitWithin(configuration.getSolrCommitWithin());
+                    long start = System.currentTimeMillis();
+                    request.process(solrOperations.getSolrClient(), index);
+                    batchSize.onSuccess(batch.size(), bytes * batch.size() / documents.size(), System.currentTimeMillis() - start);
+                }
+                catch(IOException | SolrServerException | RuntimeException ex) {
+                    batchSize.onFailure(batch.size(), ex);
+                    throw ex;
+                }
+            });
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing a batch");
+        }
+        job.documentsIndexed.addAndGet(documents.size() - failed);
+        job.documentsFailed.addAndGet(failed);
 
-                    String entryPath = parentPath + "/" + entry.getName();
+        log.info("Indexed " + (documents.size() - failed) + " documents, " + batchSize.getStats());
+    }
 
-                    if ("zip".equalsIgnoreCase(FilenameUtils.getExtension(entry.getName()))) {
-                        ZipArchiveInputStream subZis = new ZipArchiveInputStream(zis);
-                        scanZipArchive(index, rootPath, entryPath, subZis);
-                    } else {
-                        if(isWhitelisted(entry.getName())) {
-                            RawDocument rawDocument = toDocument(rootPath, entryPath, zis);
+    private void scanZipArchive(IndexingJob job, ZipScanner zipScanner, String index, String rootPath, File file) {
+        try {
+            // only the whitelisted entries are inflated
+            zipScanner.scan(file, file.getAbsolutePath(), new ZipScanner.Visitor() {
+                @Override
+                public boolean accept(String entryPath, ZipArchiveEntry entry) {
+                    return ZipScanner.isZip(entry.getName()) || isWhitelisted(entry.getName());
+                }
 
-                            parseAndIndex(index, rawDocument);
-                        }
+                @Override
+                public void visit(ZipScanner.ZipDocument document) throws IOException {
+                    job.checkCancelled();
+                    if(document.isInMemory()) {
+                        parseAndIndex(job, index, toDocument(rootPath, document.getPath(), document.getContent()));
+                    }
+                    else {
+                        parseAndIndex(job, index, relativePath(rootPath, document.getPath()), document::openStream);
                     }
                 }
-            }
+
+                @Override
+                public void failed(String entryPath, Exception ex) {
+                    log.error("Unable to read zip entry " + entryPath, ex);
+                    keep(job, index, relativePath(rootPath, entryPath));
+                }
+            });
+        } catch (CancellationException ex) {
+            throw ex;
         } catch (Exception ex) {
-            log.error("Unable to read zip file " + parentPath, ex);
+            log.error("Unable to read zip file " + file.getAbsolutePath(), ex);
+            keep(job, index, relativePath(rootPath, file.getAbsolutePath()));
         }
     }
 
+    /**
+     * The folders that couldn't be listed (access denied, share disconnected) may still contain their files.
+     */
+    private void keepFailedPaths(IndexingJob job, String index, String inputPath, ParallelFileWalker walker) {
+        for(Path failedPath : walker.getFailedPaths()) {
+            String path;
+            try {
+                path = relativePath(inputPath, failedPath.toString());
+            }
+            catch(IllegalArgumentException ex) {
+                path = "";
+            }
+            keep(job, index, path);
+        }
+    }
 
-    private static RawDocument toDocument(String rootPath, String path, InputStream stream) throws IOException {
-        RawDocument doc = new RawDocument();
+    /**
+     * Incremental indexation: the documents under a path not read are not deleted, they may still be on the disk.
+     * An empty path (the whole folder, or a path outside of it) keeps all the documents.
+     */
+    private void keep(IndexingJob job, String index, String path) {
+        SolrSnapshot snapshot = job.snapshot;
+        if(snapshot != null) {
+            if(path.isEmpty() || path.startsWith("..")) {
+                log.warn("The folder " + job.getPath() + " was not completely read, nothing will be deleted");
+                snapshot.keepAll();
+                return;
+            }
+            try {
+                snapshot.keep(solrOperations.getSolrClient(), index, path);
+            }
+            catch(IOException | SolrServerException | RuntimeException ex) {
+                log.error("Unable to read the documents indexed under " + path + ", nothing will be deleted", ex);
+                snapshot.keepAll();
+            }
+        }
+    }
+
+
+    private static String toId(String path) {
+        return DigestUtils.sha256Hex(path);
+    }
+
+    private static String relativePath(String rootPath, String path) {
         Path relativePath = Paths.get(rootPath).relativize(Paths.get(path));
-        doc.setPath(relativePath.toString());
+        return relativePath.toString();
+    }
+
+    private static RawDocument toDocument(String rootPath, String path, byte[] content) {
+        RawDocument doc = new RawDocument();
+        doc.setPath(relativePath(rootPath, path));
         doc.setLang("");
-        org.apache.commons.io.output.ByteArrayOutputStream ous = new ByteArrayOutputStream();
-        IOUtils.copy(stream, ous);
-        doc.setBody(ByteBuffer.wrap(ous.toByteArray()));
+        doc.setBody(ByteBuffer.wrap(content));
+        doc.setMd5(DigestUtils.md5Hex(content));
 
         return doc;
     }
 
     private static RawDocument toDocument(String rootPath, File file) throws IOException {
-        try(InputStream stream = new FileInputStream(file)) {
-            return toDocument(rootPath, file.getAbsolutePath(), stream);
+        // the md5 is computed while the file is read
+        try(DigestInputStream stream = new DigestInputStream(new FileInputStream(file), DigestUtils.getMd5Digest())) {
+            RawDocument doc = new RawDocument();
+            doc.setPath(relativePath(rootPath, file.getAbsolutePath()));
+            doc.setLang("");
+            doc.setBody(ByteBuffer.wrap(IOUtils.toByteArray(stream)));
+            doc.setMd5(Hex.encodeHexString(stream.getMessageDigest().digest()));
+
+            return doc;
         }
     }
 
@@ -270,158 +562,4 @@ public class DocumentIndexer {
 
         return false;
     }
-
-    private static Collection<? extends String> scanSubfolders(String inputPath) {
-        File parent = new File(inputPath);
-        List<String> folders = new ArrayList<>();
-        String[] directories = parent.list((current, name) -> new File(current, name).isDirectory());
-        if(directories != null) {
-            for (String d : directories) {
-                folders.add(new File(parent, d).toString());
-                folders.addAll(scanSubfolders(new File(parent, d).getAbsolutePath()));
-            }
-        }
-        return folders;
-    }
-
-    private static Tika tika;
-    private static Metadata metadata;
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-
-    private static ExtractDocument parseBody(String path, byte[] byteBody) throws IOException {
-        ExtractDocument result = new ExtractDocument();
-
-        if(tika == null) {
-            tika = new Tika();
-            metadata = new Metadata();
-            metadata.add(Metadata.CONTENT_ENCODING, "UTF-8");
-        }
-
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(byteBody);
-
-        log.info("Parsing file: "+path);
-
-        String extension = FilenameUtils.getExtension(path);
-
-        // not very good... but need to read it multiple times and tika is closing the stream at the end of the parsing...
-        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
-        IOUtils.copy(inputStream, out);
-        IOUtils.closeQuietly(out);
-        byte[] bytes = out.toByteArray();
-
-
-        AutoDetectParser parser = new AutoDetectParser();
-        Metadata metadata = new Metadata();
-
-        // parse document
-        try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-            try {
-
-                java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream();
-                SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-                TransformerHandler handler = factory.newTransformerHandler();
-                handler.getTransformer().setOutputProperty(OutputKeys.METHOD, "html");
-                handler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
-                handler.getTransformer().setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-                handler.setResult(new StreamResult(bos));
-                ExpandedTitleContentHandler handler1 = new ExpandedTitleContentHandler(handler);
-
-                parser.parse(stream, handler1, new Metadata());
-                String htmlText = new String(bos.toByteArray(), "UTF-8");
-
-                result.setHtmlBody(htmlText);
-
-            }catch (Exception ex){
-                log.error("Unable to parse file: "+path, ex);
-                result.setHtmlBody("");
-            }
-        }
-
-        if("pdf".equalsIgnoreCase(extension)){
-
-            try {
-
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-
-                    // load all pages of the PDF and search for images
-                    try (PDDocument document = PDDocument.load(stream)) {
-
-                        PDDocumentInformation info = document.getDocumentInformation();
-
-
-                        result.getMetadata().put("title", info.getTitle());
-                        result.getMetadata().put("author", info.getAuthor());
-                        result.getMetadata().put("subject", info.getSubject());
-                        result.getMetadata().put("keywords", info.getKeywords());
-                        result.getMetadata().put("creator", info.getCreator());
-                        result.getMetadata().put("producer", info.getProducer());
-                        result.getMetadata().put("creationDate", info.getCreationDate() != null ? dateFormat.format(info.getCreationDate().getTime()) : "");
-                        result.getMetadata().put("modificationDate", info.getModificationDate() != null ? dateFormat.format(info.getModificationDate().getTime()) : "");
-
-                        if(document.isEncrypted()) {
-                            log.warn("Unable to decrypt PDF: " + path);
-                        }
-                    }
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse PDF document", ex);
-            }
-        }
-        else if("docx".equalsIgnoreCase(extension)){
-            try {
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-
-                    try (XWPFDocument document = new XWPFDocument(stream)) {
-                        POIXMLProperties.CoreProperties props = document.getProperties().getCoreProperties();
-                        result.getMetadata().put("title", props.getTitle());
-                        result.getMetadata().put("description", props.getDescription());
-                        result.getMetadata().put("creator", props.getCreator());
-                        result.getMetadata().put("keywords", props.getKeywords());
-                        result.getMetadata().put("subject", props.getSubject());
-                    }
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse DOCX document", ex);
-            }
-        }
-        else if("doc".equalsIgnoreCase(extension)){
-            try {
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-                    SummaryInformation si = (SummaryInformation) PropertySetFactory.create(stream);
-
-                    result.getMetadata().put("title", si.getTitle());
-                    result.getMetadata().put("lastAuthor", si.getLastAuthor());
-                    result.getMetadata().put("author", si.getAuthor());
-                    result.getMetadata().put("keywords", si.getKeywords());
-                    result.getMetadata().put("comments", si.getComments());
-                    result.getMetadata().put("subject", si.getSubject());
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse DOC document", ex);
-            }
-        }
-        else if("pptx".equalsIgnoreCase(extension)){
-            try {
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-
-                    try (XMLSlideShow document = new XMLSlideShow(stream)) {
-                        POIXMLProperties.CoreProperties props = document.getProperties().getCoreProperties();
-                        result.getMetadata().put("title", props.getTitle());
-                        result.getMetadata().put("description", props.getDescription());
-                        result.getMetadata().put("creator", props.getCreator());
-                        result.getMetadata().put("keywords", props.getKeywords());
-                        result.getMetadata().put("subject", props.getSubject());
-                    }
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse DOCX document", ex);
-            }
-        }
-
-        return result;
-    }
 }
@@ -0,0 +1,133 @@
+package fr.grozeille.documentanalysis.service;
+
+import fr.grozeille.documentanalysis.ApplicationConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.solr.core.SolrOperations;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Changes the tags with atomic updates of the tags_ss field, Solr doesn't need the rest of the document
+ * and the changes are visible after tagsCommitWithin ms (and immediately with a get by id) without a hard commit.
+ * The search cache sees the commit with the new version of the index.
+ * The documents deleted since they were found (by an incremental indexation) are skipped.
+ */
+@Slf4j
+@Service
+public class DocumentTagger {
+
+    private static final String tagsField = "tags_ss";
+
+    private static final int batchSize = 1000;
+
+    @Autowired
+    private ApplicationConfiguration configuration;
+
+    @Autowired
+    private SolrOperations solrOperations;
+
+    /**
+     * Replaces the tags of a document.
+     * @return false if the document doesn't exist
+     */
+    public boolean setTags(String id, String[] tags) throws IOException, SolrServerException {
+        return send(Collections.singletonList(toUpdate(id, tags, null, null))) == 1;
+    }
+
+    /**
+     * Same change of the tags for all the documents found by the query, sent in batches.
+     * @return the number of documents updated
+     */
+    public long update(SolrQuery query, String[] set, String[] add, String[] remove) throws IOException, SolrServerException {
+        SolrQuery idQuery = query.getCopy();
+        idQuery.setFields("id");
+        idQuery.setHighlight(false);
+        idQuery.setRows(batchSize);
+        idQuery.setStart(null);
+        // the cursor reads all the results without a deep paging
+        idQuery.setSorts(Collections.singletonList(SolrQuery.SortClause.asc("id")));
+
+        long updated = 0;
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while(true) {
+            idQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = solrOperations.getSolrClient().query(configuration.getSolrIndex(), idQuery);
+
+            if(!response.getResults().isEmpty()) {
+                List<SolrInputDocument> documents = new ArrayList<>();
+                for(SolrDocument document : response.getResults()) {
+                    documents.add(toUpdate(document.getFieldValue("id").toString(), set, add, remove));
+                }
+                updated += send(documents);
+            }
+
+            String nextCursorMark = response.getNextCursorMark();
+            if(cursorMark.equals(nextCursorMark)) {
+                break;
+            }
+            cursorMark = nextCursorMark;
+        }
+
+        log.info("Tags of " + updated + " documents updated");
+        return updated;
+    }
+
+    /**
+     * @return the number of documents updated, the documents deleted in the meantime are skipped
+     */
+    private long send(List<SolrInputDocument> documents) throws IOException, SolrServerException {
+        UpdateRequest request = new UpdateRequest();
+        request.add(documents);
+        request.setCommitWithin((int) configuration.getTagsCommitWithin());
+        try {
+            request.process(solrOperations.getSolrClient(), configuration.getSolrIndex());
+            return documents.size();
+        }
+        catch(SolrException ex) {
+            if(ex.code() != SolrException.ErrorCode.CONFLICT.code) {
+                throw ex;
+            }
+            if(documents.size() == 1) {
+                return 0;
+            }
+        }
+
+        // a document of the batch doesn't exist anymore, Solr stops at the first conflict so the others are sent again one by one
+        long updated = 0;
+        for(SolrInputDocument document : documents) {
+            updated += send(Collections.singletonList(document));
+        }
+        return updated;
+    }
+
+    private static SolrInputDocument toUpdate(String id, String[] set, String[] add, String[] remove) {
+        Map<String, Object> operations = new LinkedHashMap<>();
+        if(set != null) {
+            operations.put("set", Arrays.asList(set));
+        }
+        if(add != null && add.length > 0) {
+            operations.put("add-distinct", Arrays.asList(add));
+        }
+        if(remove != null && remove.length > 0) {
+            operations.put("remove", Arrays.asList(remove));
+        }
+
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", id);
+        document.addField(tagsField, operations);
+        // only an existing document, an atomic update would create a document with only the id and the tags otherwise
+        document.addField("_version_", 1);
+        return document;
+    }
+}
@@ -0,0 +1,274 @@
+package fr.grozeille.documentanalysis.service;
+
+import com.google.common.base.Strings;
+import fr.grozeille.documentanalysis.ApplicationConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.monitor.FileAlterationListenerAdaptor;
+import org.apache.commons.io.monitor.FileAlterationMonitor;
+import org.apache.commons.io.monitor.FileAlterationObserver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Near real time indexation of the configured indexerPath: the files created, modified or deleted are indexed again
+ * a few seconds after their last change, without walking the whole folder.
+ * The changes are reported by the WatchService of the file system, and found by a periodic scan of the modification
+ * times for the network shares where the changes made by the other hosts are not reported.
+ * A path is indexed when it hasn't changed for watchDebounceMillis (a file being copied is modified many times),
+ * the changes are coalesced in a single incremental job at a time.
+ * The changes made while the application is stopped are not seen, an incremental indexation of the folder finds them.
+ */
+@Slf4j
+@Service
+public class FolderWatcher {
+
+    private static final long flushInterval = 500;
+
+    @Autowired
+    private ApplicationConfiguration configuration;
+
+    @Autowired
+    private IndexingJobService indexingJobService;
+
+    private Path root;
+
+    private WatchService watchService;
+
+    private final Map<WatchKey, Path> watchedFolders = new ConcurrentHashMap<>();
+
+    private FileAlterationMonitor scanMonitor;
+
+    private ScheduledExecutorService scheduler;
+
+    // time of the last change by path, relative to the root
+    private final ConcurrentMap<String, Long> pending = new ConcurrentHashMap<>();
+
+    private volatile IndexingJob currentJob;
+
+    @PostConstruct
+    public void start() {
+        if(!configuration.isWatchEnabled()) {
+            return;
+        }
+        if(Strings.isNullOrEmpty(configuration.getIndexerPath())) {
+            log.warn("No indexer-path, the folder watcher is not started");
+            return;
+        }
+        root = Paths.get(configuration.getIndexerPath()).toAbsolutePath().normalize();
+
+        scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "folder-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            // the folders are registered in the background, it takes a while for a large tree
+            Thread watchThread = new Thread(this::watch, "folder-watcher-events");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        }
+        catch(IOException | UnsupportedOperationException ex) {
+            log.warn("Unable to watch " + root + ", only the periodic scan finds the changes: " + ex.getMessage());
+        }
+
+        if(configuration.getWatchScanIntervalSeconds() > 0) {
+            FileAlterationObserver observer = new FileAlterationObserver(root.toFile());
+            observer.addListener(new ScanListener());
+            scanMonitor = new FileAlterationMonitor(configuration.getWatchScanIntervalSeconds() * 1000, observer);
+            scanMonitor.setThreadFactory(runnable -> {
+                Thread thread = new Thread(runnable, "folder-scanner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // the first scan only reads the modification times
+            scheduler.execute(() -> {
+                try {
+                    scanMonitor.start();
+                }
+                catch(Exception ex) {
+                    log.error("Unable to scan " + root, ex);
+                }
+            });
+        }
+
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        log.info("Watching " + root);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if(scheduler == null) {
+            return;
+        }
+        if(watchService != null) {
+            watchService.close();
+        }
+        if(scanMonitor != null) {
+            scanMonitor.stop(0);
+        }
+        scheduler.shutdownNow();
+    }
+
+    public int getPendingChanges() {
+        return pending.size();
+    }
+
+    private void watch() {
+        try {
+            register(root);
+            while(true) {
+                WatchKey key = watchService.take();
+                Path folder = watchedFolders.get(key);
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(folder == null) {
+                        continue;
+                    }
+                    if(event.kind() == OVERFLOW) {
+                        // events lost, the whole folder is checked
+                        changed(folder);
+                        continue;
+                    }
+
+                    Path child = folder.resolve((Path) event.context());
+                    if(event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        try {
+                            register(child);
+                        }
+                        catch(IOException ex) {
+                            // already deleted, or too many folders watched
+                            log.warn("Unable to watch " + child + ": " + ex.getMessage());
+                        }
+                    }
+                    changed(child);
+                }
+                if(!key.reset()) {
+                    watchedFolders.remove(key);
+                }
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException ex) {
+            // stopped
+        }
+        catch(IOException ex) {
+            log.error("Unable to watch " + root + ", only the periodic scan finds the changes", ex);
+        }
+    }
+
+    private void register(Path folder) throws IOException {
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                watchedFolders.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                log.warn("Unable to watch " + file + ": " + exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void changed(Path path) {
+        pending.put(root.relativize(path).toString(), System.currentTimeMillis());
+    }
+
+    /**
+     * Submits the paths not changed since watchDebounceMillis, when the previous job is finished.
+     */
+    private void flush() {
+        try {
+            IndexingJob job = currentJob;
+            if(pending.isEmpty() || (job != null && job.isActive())) {
+                return;
+            }
+
+            long quietSince = System.currentTimeMillis() - configuration.getWatchDebounceMillis();
+            Map<String, Long> ready = new HashMap<>();
+            for(Map.Entry<String, Long> entry : pending.entrySet()) {
+                if(entry.getValue() <= quietSince) {
+                    ready.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if(ready.isEmpty()) {
+                return;
+            }
+
+            try {
+                currentJob = indexingJobService.submitChanges(root.toString(), configuration.getSolrIndex(), coalesce(ready.keySet()));
+            }
+            catch(IllegalStateException | RejectedExecutionException ex) {
+                // another job is indexing the folder, submitted again at the next flush
+                log.debug("Changes not submitted: " + ex.getMessage());
+                return;
+            }
+
+            // the paths changed again in the meantime stay pending
+            for(Map.Entry<String, Long> entry : ready.entrySet()) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        catch(RuntimeException ex) {
+            log.error("Unable to submit the changes of " + root, ex);
+        }
+    }
+
+    /**
+     * The paths under another changed path are already indexed with it.
+     */
+    static List<String> coalesce(Collection<String> paths) {
+        Set<Path> all = new HashSet<>();
+        for(String path : paths) {
+            all.add(Paths.get(path));
+        }
+
+        List<String> result = new ArrayList<>();
+        for(Path path : all) {
+            boolean covered = all.contains(Paths.get(""));
+            for(Path parent = path.getParent(); parent != null && !covered; parent = parent.getParent()) {
+                covered = all.contains(parent);
+            }
+            if(!covered || path.toString().isEmpty()) {
+                result.add(path.toString());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private class ScanListener extends FileAlterationListenerAdaptor {
+        @Override
+        public void onFileCreate(File file) {
+            changed(file.toPath());
+        }
+
+        @Override
+        public void onFileChange(File file) {
+            changed(file.toPath());
+        }
+
+        @Override
+        public void onFileDelete(File file) {
+            changed(file.toPath());
+        }
+
+        @Override
+        public void onDirectoryDelete(File directory) {
+            changed(directory.toPath());
+        }
+    }
+}
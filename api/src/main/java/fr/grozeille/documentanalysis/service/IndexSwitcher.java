@@ -0,0 +1,97 @@
+package fr.grozeille.documentanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.CoreAdminRequest;
+import org.apache.solr.common.params.CoreAdminParams;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blue/green rebuild of an index: the documents are indexed in a new core while the live core keeps serving the searches,
+ * then the two cores are swapped atomically. The previous content is kept in the build core for a retention period
+ * (the searches in progress can finish, and the swap can be reverted manually), then the core is unloaded and deleted.
+ */
+@Slf4j
+public class IndexSwitcher implements Closeable {
+
+    private final SolrClient solrClient;
+
+    private final String configSet;
+
+    private final long retentionSeconds;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public IndexSwitcher(SolrClient solrClient, String configSet, long retentionSeconds) {
+        this.solrClient = solrClient;
+        this.configSet = configSet;
+        this.retentionSeconds = retentionSeconds;
+    }
+
+    /**
+     * Creates an empty core, with the config set of the live cores.
+     */
+    public String createBuildIndex(String index) throws IOException, SolrServerException {
+        String buildIndex = index + "_" + System.currentTimeMillis();
+
+        CoreAdminRequest.Create create = new CoreAdminRequest.Create();
+        create.setCoreName(buildIndex);
+        create.setInstanceDir(buildIndex);
+        create.setConfigSet(configSet);
+        create.process(solrClient);
+
+        log.info("Rebuilding " + index + " in " + buildIndex);
+        return buildIndex;
+    }
+
+    /**
+     * The build core becomes the live core, the previous content of the live core is deleted after the retention period.
+     */
+    public void swap(String index, String buildIndex) throws IOException, SolrServerException {
+        if(!exists(index)) {
+            // first build
+            CoreAdminRequest.renameCore(buildIndex, index, solrClient);
+            log.info(buildIndex + " renamed " + index);
+            return;
+        }
+
+        CoreAdminRequest swap = new CoreAdminRequest();
+        swap.setAction(CoreAdminParams.CoreAdminAction.SWAP);
+        swap.setCoreName(index);
+        swap.setOtherCoreName(buildIndex);
+        swap.process(solrClient);
+
+        log.info(buildIndex + " swapped with " + index + ", previous content dropped in " + retentionSeconds + " sec");
+        scheduler.schedule(() -> drop(buildIndex), retentionSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Unloads the core and deletes its files, for a failed build or a previous content.
+     */
+    public void drop(String index) {
+        try {
+            CoreAdminRequest.unloadCore(index, true, true, solrClient);
+            log.info(index + " dropped");
+        }
+        catch(Exception ex) {
+            log.error("Unable to drop the core " + index, ex);
+        }
+    }
+
+    public boolean exists(String index) throws IOException, SolrServerException {
+        return CoreAdminRequest.getStatus(index, solrClient).getCoreStatus(index).size() > 0;
+    }
+
+    @Override
+    public void close() {
+        if(!scheduler.shutdownNow().isEmpty()) {
+            log.warn("Previous contents of the indexes not dropped, the cores must be unloaded manually");
+        }
+    }
+}
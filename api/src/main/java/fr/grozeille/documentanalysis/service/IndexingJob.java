@@ -0,0 +1,199 @@
+package fr.grozeille.documentanalysis.service;
+
+import fr.grozeille.documentanalysis.model.IndexingProgress;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An indexation of a folder submitted to IndexingJobService: its progress and its own state
+ * (batch in progress, snapshot of an incremental indexation), so the jobs can run in parallel.
+ * A job of the FolderWatcher, or of a sub folder of the indexer path, only indexes some paths of the folder
+ * and only replaces the documents under these paths.
+ */
+public class IndexingJob {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    @Getter
+    private final String id = UUID.randomUUID().toString();
+
+    @Getter
+    private final String path;
+
+    @Getter
+    private final String index;
+
+    @Getter
+    private final boolean incremental;
+
+    /**
+     * Files, zip files and folders to index again, relative to the path. Null to walk the whole path.
+     */
+    @Getter
+    private final List<String> changes;
+
+    @Getter
+    private volatile Status status = Status.QUEUED;
+
+    private volatile String error;
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private volatile boolean cancelled = false;
+
+    @Setter
+    private volatile Future<?> future;
+
+    @Setter
+    private volatile ParallelFileWalker walker;
+
+    final AtomicLong filesSeen = new AtomicLong();
+
+    final AtomicLong filesParsed = new AtomicLong();
+
+    final AtomicLong documentsIndexed = new AtomicLong();
+
+    final AtomicLong documentsUnchanged = new AtomicLong();
+
+    final AtomicLong documentsFailed = new AtomicLong();
+
+    final AtomicLong bytes = new AtomicLong();
+
+    // only used by the thread running the job
+    List<SolrInputDocument> solrBatch = new ArrayList<>();
+
+    long solrBatchBytes = 0;
+
+    BisectingRetry retry;
+
+    SolrSnapshot snapshot;
+
+    public IndexingJob(String path, String index, boolean incremental) {
+        this.path = path;
+        this.index = index;
+        this.incremental = incremental;
+        this.changes = null;
+    }
+
+    public IndexingJob(String path, String index, boolean incremental, List<String> changes) {
+        this.path = path;
+        this.index = index;
+        this.incremental = incremental;
+        this.changes = changes;
+    }
+
+    /**
+     * The whole index is replaced by the content of the folder.
+     */
+    public boolean isFullReindex() {
+        return !incremental && changes == null;
+    }
+
+    /**
+     * The folders (or files) read by the job.
+     */
+    public List<Path> getFolders() {
+        Path folder = Paths.get(path).toAbsolutePath().normalize();
+        if(changes == null) {
+            return Collections.singletonList(folder);
+        }
+        List<Path> folders = new ArrayList<>();
+        for(String change : changes) {
+            folders.add(folder.resolve(change).normalize());
+        }
+        return folders;
+    }
+
+    public boolean isActive() {
+        return status == Status.QUEUED || status == Status.RUNNING;
+    }
+
+    void started() {
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void finished(Throwable ex) {
+        endTime = System.currentTimeMillis();
+        if(cancelled) {
+            status = Status.CANCELLED;
+        }
+        else if(ex != null) {
+            // the errors (StackOverflowError of a parser) often have no message
+            error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+            status = Status.FAILED;
+        }
+        else {
+            status = Status.DONE;
+        }
+    }
+
+    /**
+     * The job stops at the next file, the batch in progress is not sent.
+     */
+    public void cancel() {
+        cancelled = true;
+        if(status == Status.QUEUED) {
+            endTime = System.currentTimeMillis();
+            status = Status.CANCELLED;
+        }
+        Future<?> future = this.future;
+        if(future != null) {
+            future.cancel(true);
+        }
+    }
+
+    void checkCancelled() {
+        if(cancelled) {
+            throw new CancellationException("Job " + id + " cancelled");
+        }
+    }
+
+    public IndexingProgress getProgress() {
+        IndexingProgress progress = new IndexingProgress();
+        progress.setJobId(id);
+        progress.setPath(path);
+        progress.setIncremental(incremental);
+        progress.setChanges(changes != null ? changes.size() : null);
+        progress.setStatus(status.name());
+        progress.setError(error);
+        progress.setStartTime(startTime);
+        progress.setEndTime(endTime);
+        progress.setFilesSeen(filesSeen.get());
+        progress.setFilesParsed(filesParsed.get());
+        progress.setDocumentsIndexed(documentsIndexed.get());
+        progress.setDocumentsUnchanged(documentsUnchanged.get());
+        progress.setDocumentsFailed(documentsFailed.get());
+        progress.setBytes(bytes.get());
+
+        ParallelFileWalker walker = this.walker;
+        progress.setFilesFound(walker != null ? walker.getFound() : filesSeen.get());
+
+        if(startTime > 0) {
+            long elapsed = (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+            long documents = documentsIndexed.get() + documentsUnchanged.get();
+            if(elapsed > 0) {
+                progress.setDocumentsPerSecond(documentsIndexed.get() * 1000.0 / elapsed);
+            }
+            if(status == Status.RUNNING && filesSeen.get() > 0 && documents > 0) {
+                // the files left, at the speed of the files done so far
+                long filesLeft = Math.max(0, progress.getFilesFound() - filesSeen.get());
+                progress.setEta(filesLeft * elapsed / filesSeen.get() / 1000);
+            }
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,152 @@
+package fr.grozeille.documentanalysis.service;
+
+import com.google.common.base.Strings;
+import fr.grozeille.documentanalysis.ApplicationConfiguration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the indexing jobs in the background, at most indexingMaxJobs at the same time and indexingQueueSize waiting.
+ * Two jobs can't index the same folder (or a folder and one of its sub folders) at the same time,
+ * and a full reindex (not incremental) replaces the whole index so it can't run with another job on the same index.
+ * A sub folder of the configured indexerPath is indexed as a part of it: the ids stay relative to the indexerPath
+ * and only the documents under the sub folder are replaced, the rest of the index is not modified.
+ * The last finished jobs are kept for their progress.
+ */
+@Slf4j
+@Service
+public class IndexingJobService {
+
+    private static final int finishedJobsKept = 100;
+
+    @Autowired
+    private ApplicationConfiguration configuration;
+
+    @Autowired
+    private DocumentIndexer documentIndexer;
+
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, IndexingJob> jobs = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(configuration.getIndexingMaxJobs(), configuration.getIndexingMaxJobs(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(configuration.getIndexingQueueSize()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for(IndexingJob job : list()) {
+            job.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * @throws IllegalStateException when another job is indexing the same folder, or the same index for a full reindex
+     * @throws RejectedExecutionException when too many jobs are waiting
+     */
+    public IndexingJob submit(String path, String index, boolean incremental) {
+        String root = configuration.getIndexerPath();
+        if(!Strings.isNullOrEmpty(root)) {
+            Path rootFolder = Paths.get(root).toAbsolutePath().normalize();
+            Path folder = Paths.get(path).toAbsolutePath().normalize();
+            if(folder.startsWith(rootFolder) && !folder.equals(rootFolder)) {
+                return submit(new IndexingJob(rootFolder.toString(), index, incremental,
+                        Collections.singletonList(rootFolder.relativize(folder).toString())));
+            }
+        }
+        return submit(new IndexingJob(path, index, incremental));
+    }
+
+    /**
+     * Incremental job of the changed paths only (relative to the folder).
+     * @throws IllegalStateException when another job is indexing the same folder, or the same index for a full reindex
+     * @throws RejectedExecutionException when too many jobs are waiting
+     */
+    public IndexingJob submitChanges(String path, String index, List<String> changes) {
+        return submit(new IndexingJob(path, index, true, changes));
+    }
+
+    private synchronized IndexingJob submit(IndexingJob job) {
+        List<Path> folders = job.getFolders();
+        for(IndexingJob other : jobs.values()) {
+            if(!other.isActive()) {
+                continue;
+            }
+            if(other.getIndex().equals(job.getIndex()) && (job.isFullReindex() || other.isFullReindex())) {
+                throw new IllegalStateException("The job " + other.getId() + " is already indexing " + job.getIndex() + ", a full reindex can't run with another job");
+            }
+            for(Path otherFolder : other.getFolders()) {
+                for(Path folder : folders) {
+                    if(folder.startsWith(otherFolder) || otherFolder.startsWith(folder)) {
+                        throw new IllegalStateException("The job " + other.getId() + " is already indexing " + otherFolder);
+                    }
+                }
+            }
+        }
+
+        job.setFuture(executor.submit(() -> run(job)));
+        jobs.put(job.getId(), job);
+        removeFinishedJobs();
+        return job;
+    }
+
+    private void run(IndexingJob job) {
+        if(!job.isActive()) {
+            // cancelled while waiting
+            return;
+        }
+
+        job.started();
+        log.info("Indexing job " + job.getId() + " started: " + job.getPath() + (job.getChanges() != null ? ", " + job.getChanges().size() + " changes" : ""));
+        try {
+            documentIndexer.index(job);
+            job.finished(null);
+        }
+        catch(Throwable ex) {
+            // also the errors of the parsers (StackOverflowError, NoClassDefFoundError), a job left RUNNING would block its folder
+            job.finished(ex);
+            if(job.getStatus() == IndexingJob.Status.FAILED) {
+                log.error("Indexing job " + job.getId() + " failed", ex);
+            }
+        }
+        log.info("Indexing job " + job.getId() + " " + job.getStatus() + " in " + ((job.getProgress().getEndTime() - job.getProgress().getStartTime()) / 1000.0) + " sec");
+    }
+
+    public synchronized IndexingJob get(String id) {
+        return jobs.get(id);
+    }
+
+    public synchronized List<IndexingJob> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    private void removeFinishedJobs() {
+        long finished = jobs.values().stream().filter(job -> !job.isActive()).count();
+        Iterator<IndexingJob> iterator = jobs.values().iterator();
+        while(finished > finishedJobsKept && iterator.hasNext()) {
+            if(!iterator.next().isActive()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package fr.grozeille.documentanalysis.service;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * MinHash signature of the text of a document, to find its near duplicates without comparing it to all the other documents.
+ * The text is cut in shingles of 5 words and the signature keeps the minimum of 128 hash functions over the shingles:
+ * the fraction of equal values of two signatures estimates the Jaccard similarity of their shingles.
+ * The signature is also cut in 16 bands of 8 values (LSH) indexed as terms, the documents sharing at least one band
+ * are the candidates: 99.9% of the documents with a similarity of 0.9 are found, 95% at 0.8, 6% at 0.5.
+ * The hash functions are seeded, so the indexer and the api compute the same signatures.
+ */
+public class MinHash {
+
+    public static final int SHINGLE_WORDS = 5;
+
+    public static final int HASHES = 128;
+
+    public static final int BANDS = 16;
+
+    private static final int ROWS = HASHES / BANDS;
+
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+    private static final long[] multipliers = new long[HASHES];
+
+    private static final long[] increments = new long[HASHES];
+
+    static {
+        Random random = new Random(20201018L);
+        for(int i = 0; i < HASHES; i++) {
+            multipliers[i] = random.nextLong() | 1L;
+            increments[i] = random.nextLong();
+        }
+    }
+
+    private MinHash() {
+    }
+
+    /**
+     * Signature of the words of the text, null when there is no word.
+     */
+    public static int[] signature(String text) {
+        if(text == null) {
+            return null;
+        }
+
+        long[] words = new long[16];
+        int count = 0;
+        for(String word : WORD_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if(word.isEmpty()) {
+                continue;
+            }
+            if(count == words.length) {
+                words = Arrays.copyOf(words, count * 2);
+            }
+            words[count++] = hashFunction.hashString(word, StandardCharsets.UTF_8).asLong();
+        }
+        if(count == 0) {
+            return null;
+        }
+
+        long[] minimums = new long[HASHES];
+        Arrays.fill(minimums, Long.MAX_VALUE);
+
+        // a text shorter than a shingle is a single shingle
+        int shingles = Math.max(1, count - SHINGLE_WORDS + 1);
+        for(int s = 0; s < shingles; s++) {
+            long shingle = 0;
+            for(int w = s; w < Math.min(count, s + SHINGLE_WORDS); w++) {
+                shingle = shingle * 31 + words[w];
+            }
+            for(int i = 0; i < HASHES; i++) {
+                long hash = mix(shingle * multipliers[i] + increments[i]);
+                if(hash < minimums[i]) {
+                    minimums[i] = hash;
+                }
+            }
+        }
+
+        int[] signature = new int[HASHES];
+        for(int i = 0; i < HASHES; i++) {
+            signature[i] = (int) (minimums[i] >>> 32);
+        }
+        return signature;
+    }
+
+    /**
+     * The LSH bands of the signature, the band number is part of the term.
+     */
+    public static List<String> bands(int[] signature) {
+        List<String> bands = new ArrayList<>(BANDS);
+        for(int b = 0; b < BANDS; b++) {
+            Hasher hasher = hashFunction.newHasher();
+            for(int r = 0; r < ROWS; r++) {
+                hasher.putInt(signature[b * ROWS + r]);
+            }
+            bands.add(b + "_" + Long.toHexString(hasher.hash().asLong()));
+        }
+        return bands;
+    }
+
+    /**
+     * Estimated Jaccard similarity of the texts of two signatures, from 0 to 1.
+     */
+    public static double similarity(int[] signature1, int[] signature2) {
+        int equals = 0;
+        for(int i = 0; i < HASHES; i++) {
+            if(signature1[i] == signature2[i]) {
+                equals++;
+            }
+        }
+        return (double) equals / HASHES;
+    }
+
+    public static String encode(int[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(HASHES * 4);
+        buffer.asIntBuffer().put(signature);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    /**
+     * Null when the value is not a signature.
+     */
+    public static int[] decode(String value) {
+        if(value == null) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(value);
+        }
+        catch(IllegalArgumentException ex) {
+            return null;
+        }
+        if(bytes.length != HASHES * 4) {
+            return null;
+        }
+        int[] signature = new int[HASHES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(signature);
+        return signature;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
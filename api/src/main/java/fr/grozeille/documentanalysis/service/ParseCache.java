@@ -0,0 +1,115 @@
+package fr.grozeille.documentanalysis.service;
+
+import com.google.common.base.Strings;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result of the extraction (html body, language, metadata) by md5 of the content,
+ * so the copies of a document are only parsed once.
+ * Stored in a MapDB file kept between the runs (in memory when no file is configured),
+ * the least recently read entries are evicted when there are more than maxEntries.
+ */
+@Slf4j
+public class ParseCache implements Closeable {
+
+    private final DB db;
+
+    private final HTreeMap<String, Entry> map;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public ParseCache(String file, long maxEntries) {
+        DB db;
+        if(Strings.isNullOrEmpty(file)) {
+            db = DBMaker.memoryDB().make();
+        }
+        else {
+            try {
+                db = openFile(file);
+            }
+            catch(Exception ex) {
+                // a cache can be rebuilt, don't fail the application for a corrupted file
+                log.warn("Unable to open the parse cache " + file + ", it is cleared: " + ex.getMessage());
+                new File(file).delete();
+                db = openFile(file);
+            }
+        }
+        this.db = db;
+        this.map = (HTreeMap<String, Entry>) db.hashMap("parse-cache", Serializer.STRING, Serializer.JAVA)
+                .expireMaxSize(maxEntries)
+                .expireAfterCreate()
+                .expireAfterGet()
+                .createOrOpen();
+
+        log.info("Parse cache " + (Strings.isNullOrEmpty(file) ? "in memory" : file) + ": " + map.size() + " entries");
+    }
+
+    private static DB openFile(String file) {
+        return DBMaker.fileDB(file)
+                .fileMmapEnableIfSupported()
+                .closeOnJvmShutdown()
+                .make();
+    }
+
+    public Entry get(String md5) {
+        Entry entry = map.get(md5);
+        if(entry != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void put(String md5, Entry entry) {
+        map.put(md5, entry);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void close() {
+        log.info("Parse cache: " + hits.get() + " hits, " + misses.get() + " misses, " + map.size() + " entries");
+        db.close();
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String htmlBody;
+
+        private String lang;
+
+        private HashMap<String, String> metadata;
+    }
+}
@@ -0,0 +1,176 @@
+package fr.grozeille.documentanalysis.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import fr.grozeille.documentanalysis.model.SearchResult;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of the searches by normalized query and page, so the same queries (popular ones, or sent again at each
+ * keystroke by the web UI) are answered without a request to Solr.
+ * The entries expire after ttlSeconds and the least recently used are evicted above maxEntries.
+ * The cache is cleared when the index changes: by invalidate() after the commits of this application,
+ * and when the version of the Solr index changes (commits of the indexer, commitWithin, swap of the cores),
+ * checked at most every versionCheckInterval ms.
+ */
+@Slf4j
+public class SearchCache {
+
+    public interface Loader {
+        SearchResult load() throws IOException, SolrServerException;
+    }
+
+    private final Cache<String, SearchResult> cache;
+
+    private final SolrClient solrClient;
+
+    private final String collection;
+
+    private final long versionCheckInterval;
+
+    private volatile String indexVersion = null;
+
+    private volatile long versionCheckTime = 0;
+
+    // the results loaded before an invalidation are not cached
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hitNanos = new AtomicLong();
+
+    private final AtomicLong missNanos = new AtomicLong();
+
+    public SearchCache(SolrClient solrClient, String collection, long maxEntries, long ttlSeconds, long versionCheckInterval) {
+        this.solrClient = solrClient;
+        this.collection = collection;
+        this.versionCheckInterval = versionCheckInterval;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public SearchResult get(String key, Loader loader) throws IOException, SolrServerException {
+        long start = System.nanoTime();
+        checkVersion();
+
+        SearchResult result = cache.getIfPresent(key);
+        if(result != null) {
+            hitNanos.addAndGet(System.nanoTime() - start);
+            return result;
+        }
+
+        long loadGeneration = generation.get();
+        result = loader.load();
+        if(generation.get() == loadGeneration) {
+            cache.put(key, result);
+        }
+        missNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * After a commit in this collection, the commits in a core being rebuilt don't change the results.
+     */
+    public void invalidate(String collection) {
+        if(this.collection.equals(collection)) {
+            invalidate();
+        }
+    }
+
+    private void checkVersion() {
+        long now = System.currentTimeMillis();
+        if(now - versionCheckTime < versionCheckInterval) {
+            return;
+        }
+        synchronized(this) {
+            if(now - versionCheckTime < versionCheckInterval) {
+                return;
+            }
+            versionCheckTime = now;
+            try {
+                String version = readIndexVersion();
+                if(indexVersion != null && !indexVersion.equals(version)) {
+                    log.debug("Index version " + indexVersion + " -> " + version + ", search cache cleared");
+                    invalidate();
+                }
+                indexVersion = version;
+            }
+            catch(IOException | SolrServerException | RuntimeException ex) {
+                // the cached results expire anyway
+                log.warn("Unable to read the version of the index " + collection + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Version of the last commit, with its time: the version alone is not unique when another core is swapped in.
+     */
+    private String readIndexVersion() throws IOException, SolrServerException {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("show", "index");
+        params.set("numTerms", 0);
+        NamedList<Object> response = solrClient.request(new GenericSolrRequest(SolrRequest.METHOD.GET, "/admin/luke", params), collection);
+        NamedList<?> index = (NamedList<?>) response.get("index");
+        return index.get("version") + "/" + index.get("lastModified");
+    }
+
+    public Stats getStats() {
+        CacheStats stats = cache.stats();
+        Stats result = new Stats();
+        result.setEntries(cache.size());
+        result.setHits(stats.hitCount());
+        result.setMisses(stats.missCount());
+        result.setHitRatio(stats.hitRate());
+        result.setEvictions(stats.evictionCount());
+        result.setInvalidations(invalidations.get());
+        result.setHitLatency(stats.hitCount() > 0 ? hitNanos.get() / 1000000.0 / stats.hitCount() : 0);
+        result.setMissLatency(stats.missCount() > 0 ? missNanos.get() / 1000000.0 / stats.missCount() : 0);
+        return result;
+    }
+
+    @Data
+    public static class Stats {
+        private long entries;
+
+        private long hits;
+
+        private long misses;
+
+        private double hitRatio;
+
+        private long evictions;
+
+        private long invalidations;
+
+        /**
+         * Average time (ms) of a search answered by the cache.
+         */
+        private double hitLatency;
+
+        /**
+         * Average time (ms) of a search sent to Solr.
+         */
+        private double missLatency;
+    }
+}
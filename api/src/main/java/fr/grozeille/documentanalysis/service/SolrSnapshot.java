@@ -0,0 +1,122 @@
+package fr.grozeille.documentanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * id and md5 of all the documents already in Solr, read in pages with a cursor before an incremental indexation.
+ * Each document of the input is checked once: the unchanged ones don't have to be sent again,
+ * the ids never checked are the documents not in the input anymore.
+ * The snapshot can be limited to some paths (files, zip files or folders) when only these paths are indexed again.
+ */
+@Slf4j
+public class SolrSnapshot {
+
+    private static final int pageSize = 10000;
+
+    // below the default maxBooleanClauses of Solr
+    private static final int pathsPerQuery = 500;
+
+    private final ConcurrentMap<String, String> md5ById = new ConcurrentHashMap<>();
+
+    public static SolrSnapshot load(SolrClient solrClient, String collection) throws IOException, SolrServerException {
+        SolrSnapshot snapshot = new SolrSnapshot();
+        snapshot.load(solrClient, collection, "*:*");
+
+        log.info(snapshot.md5ById.size() + " documents already indexed");
+        return snapshot;
+    }
+
+    /**
+     * Only the documents under these paths, relative to the indexed folder like the path_descendent_path field.
+     */
+    public static SolrSnapshot load(SolrClient solrClient, String collection, Collection<String> paths) throws IOException, SolrServerException {
+        if(paths.contains("")) {
+            // the whole folder
+            return load(solrClient, collection);
+        }
+
+        SolrSnapshot snapshot = new SolrSnapshot();
+        List<String> terms = new ArrayList<>();
+        for(String path : paths) {
+            terms.add(ClientUtils.escapeQueryChars(path));
+            if(terms.size() >= pathsPerQuery) {
+                snapshot.load(solrClient, collection, "path_descendent_path:(" + String.join(" OR ", terms) + ")");
+                terms.clear();
+            }
+        }
+        if(terms.size() > 0) {
+            snapshot.load(solrClient, collection, "path_descendent_path:(" + String.join(" OR ", terms) + ")");
+        }
+
+        log.info(snapshot.md5ById.size() + " documents already indexed under " + paths.size() + " paths");
+        return snapshot;
+    }
+
+    private void load(SolrClient solrClient, String collection, String query) throws IOException, SolrServerException {
+        SolrQuery solrQuery = new SolrQuery(query);
+        solrQuery.setFields("id", "md5_s");
+        solrQuery.setRows(pageSize);
+        solrQuery.setSort(SolrQuery.SortClause.asc("id"));
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while(true) {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = solrClient.query(collection, solrQuery);
+            for(SolrDocument document : response.getResults()) {
+                Object md5 = document.getFieldValue("md5_s");
+                md5ById.put(document.getFieldValue("id").toString(), md5 != null ? md5.toString() : "");
+            }
+
+            String nextCursorMark = response.getNextCursorMark();
+            if(cursorMark.equals(nextCursorMark)) {
+                break;
+            }
+            cursorMark = nextCursorMark;
+        }
+    }
+
+    /**
+     * Checks a document of the input, true if it is already indexed with the same content.
+     */
+    public boolean isUnchanged(String id, String md5) {
+        String indexedMd5 = md5ById.remove(id);
+        return indexedMd5 != null && indexedMd5.equalsIgnoreCase(md5);
+    }
+
+    /**
+     * Checks all the documents under a path that couldn't be read (zip file or entry in error), so they are not deleted.
+     */
+    public void keep(SolrClient solrClient, String collection, String path) throws IOException, SolrServerException {
+        SolrSnapshot kept = load(solrClient, collection, Collections.singletonList(path));
+        md5ById.keySet().removeAll(kept.md5ById.keySet());
+    }
+
+    /**
+     * Checks all the documents, nothing is deleted.
+     */
+    public void keepAll() {
+        md5ById.clear();
+    }
+
+    /**
+     * The documents indexed but not checked, so not in the input.
+     */
+    public List<String> getUncheckedIds() {
+        return new ArrayList<>(md5ById.keySet());
+    }
+}
@@ -0,0 +1,63 @@
+package fr.grozeille.documentanalysis;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.core.CoreContainer;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Replaces the Solr of SOLR_URL with an embedded Solr loaded from a copy of src/test/resources/solr,
+ * one per Spring context. Used with the embedded-solr profile, after the application in the classes of the test
+ * so its client overrides the one of the application.
+ */
+@TestConfiguration
+public class EmbeddedSolrConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public SolrClient solrClient() throws Exception {
+        File solrHome = new File("target/embedded-solr/" + UUID.randomUUID());
+        FileUtils.copyDirectory(new File(getClass().getResource("/solr").toURI()), solrHome);
+        return new EmbeddedSolrServer(CoreContainer.createAndLoad(solrHome.toPath()), "documents");
+    }
+
+    /**
+     * A PDF of the text, the words are wrapped in lines so they are all extracted.
+     */
+    public static void writePdf(File file, String text) throws IOException {
+        file.getParentFile().mkdirs();
+        try(PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            try(PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 10);
+                content.setLeading(12);
+                content.newLineAtOffset(40, 750);
+                StringBuilder line = new StringBuilder();
+                for(String word : text.split(" ")) {
+                    if(line.length() + word.length() > 90) {
+                        content.showText(line.toString());
+                        content.newLine();
+                        line.setLength(0);
+                    }
+                    line.append(word).append(' ');
+                }
+                content.showText(line.toString());
+                content.endText();
+            }
+            document.save(file);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package fr.grozeille.documentanalysis.rest;
+
+import com.jayway.jsonpath.JsonPath;
+import fr.grozeille.documentanalysis.DocumentAnalysisApiApplication;
+import fr.grozeille.documentanalysis.EmbeddedSolrConfiguration;
+import fr.grozeille.documentanalysis.service.IndexingJob;
+import fr.grozeille.documentanalysis.service.IndexingJobService;
+import fr.grozeille.documentanalysis.service.MinHashTest;
+import fr.grozeille.documentanalysis.service.SearchCache;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {DocumentAnalysisApiApplication.class, EmbeddedSolrConfiguration.class}, properties = {
+        "document-analysis.search-cache-version-check-millis=0"})
+@ActiveProfiles("embedded-solr")
+@AutoConfigureMockMvc
+public class DocumentControllerTest {
+
+    private static final String body = "The quarterly report describes the activity of the sales department during the last three months.";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SolrClient solrClient;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    @Autowired
+    private IndexingJobService indexingJobService;
+
+    @Before
+    public void clearIndex() throws Exception {
+        solrClient.deleteByQuery("documents", "*:*");
+        solrClient.commit("documents");
+    }
+
+    @Test
+    public void searchCacheSeesTheCommitsOfTheIndexer() throws Exception {
+        add("1", "report1.pdf", body);
+        solrClient.commit("documents");
+
+        mockMvc.perform(get("/api/v1/documents/").param("query", "report"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.numFound").value(1));
+        long hits = searchCache.getStats().getHits();
+        // the same query with other cases and spaces
+        mockMvc.perform(get("/api/v1/documents/").param("query", " Report "))
+                .andExpect(jsonPath("$.numFound").value(1));
+        assertEquals(hits + 1, searchCache.getStats().getHits());
+
+        // committed by another application, the cache of this one is not invalidated by a call
+        add("2", "report2.pdf", body);
+        solrClient.commit("documents");
+
+        mockMvc.perform(get("/api/v1/documents/").param("query", "report"))
+                .andExpect(jsonPath("$.numFound").value(2));
+    }
+
+    @Test
+    public void cursorPagesAreTheNumberedPages() throws Exception {
+        // same score, the pages are sorted by id
+        for(int cpt = 0; cpt < 50; cpt++) {
+            add(String.format("%02d", cpt), "report" + cpt + ".pdf", body);
+        }
+        solrClient.commit("documents");
+
+        String cursor = null;
+        for(int page = 0; page < 3; page++) {
+            List<String> pageIds = ids(search(mockMvc.perform(get("/api/v1/documents/").param("query", "report").param("page", String.valueOf(page)))));
+
+            MockHttpServletRequestBuilder request = get("/api/v1/documents/").param("query", "report");
+            if(cursor != null) {
+                request.param("cursor", cursor);
+            }
+            String result = search(mockMvc.perform(request));
+
+            assertEquals(page < 2 ? 20 : 10, pageIds.size());
+            assertEquals(pageIds, ids(result));
+            assertEquals(50, (int) JsonPath.read(result, "$.numFound"));
+            cursor = JsonPath.read(result, "$.nextCursor");
+        }
+        // no next cursor after the last page
+        assertNull(cursor);
+    }
+
+    @Test
+    public void setTagsKeepsTheOtherFields() throws Exception {
+        add("1", "report1.pdf", body, "old");
+
+        // not committed, the update needs the document from the update log
+        mockMvc.perform(post("/api/v1/documents/1/tags").contentType(MediaType.APPLICATION_JSON).content("[\"a\", \"b\"]"))
+                .andExpect(status().isOk());
+
+        SolrDocument document = solrClient.getById("documents", "1");
+        assertEquals(Arrays.asList("a", "b"), document.getFieldValues("tags_ss"));
+        assertEquals("report1.pdf", document.getFieldValue("name_s"));
+        assertEquals("folder/report1.pdf", document.getFieldValue("path_descendent_path"));
+        assertEquals(body, document.getFieldValue("body_txt_en"));
+        assertEquals("1", document.getFieldValue("md5_s"));
+    }
+
+    @Test
+    public void setTagsOfAnUnknownDocument() throws Exception {
+        mockMvc.perform(post("/api/v1/documents/unknown/tags").contentType(MediaType.APPLICATION_JSON).content("[\"a\"]"))
+                .andExpect(status().isNotFound());
+
+        // the atomic update didn't create a document with only the tags
+        assertNull(solrClient.getById("documents", "unknown"));
+    }
+
+    @Test
+    public void tagDocumentsByIds() throws Exception {
+        add("1", "report1.pdf", body, "old");
+        add("2", "report2.pdf", body, "old");
+        add("3", "report3.pdf", body, "old");
+        solrClient.commit("documents");
+
+        mockMvc.perform(post("/api/v1/documents/tags").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\": [\"1\", \"2\", \"unknown\"], \"add\": [\"x\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        assertEquals(Arrays.asList("old", "x"), solrClient.getById("documents", "1").getFieldValues("tags_ss"));
+        assertEquals(Arrays.asList("old", "x"), solrClient.getById("documents", "2").getFieldValues("tags_ss"));
+        assertEquals(Collections.singletonList("old"), solrClient.getById("documents", "3").getFieldValues("tags_ss"));
+        assertEquals(body, solrClient.getById("documents", "2").getFieldValue("body_txt_en"));
+        assertNull(solrClient.getById("documents", "unknown"));
+    }
+
+    @Test
+    public void tagDocumentsDeletedInTheMeantime() throws Exception {
+        add("1", "report1.pdf", body, "old");
+        add("2", "report2.pdf", body, "old");
+        add("3", "report3.pdf", body, "old");
+        solrClient.commit("documents");
+        // still found by the query until the next commit
+        solrClient.deleteById("documents", "2");
+
+        mockMvc.perform(post("/api/v1/documents/tags").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"report\", \"add\": [\"x\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("2"));
+
+        assertEquals(Arrays.asList("old", "x"), solrClient.getById("documents", "1").getFieldValues("tags_ss"));
+        assertEquals(Arrays.asList("old", "x"), solrClient.getById("documents", "3").getFieldValues("tags_ss"));
+        // not created again with only the tags
+        assertNull(solrClient.getById("documents", "2"));
+    }
+
+    @Test
+    public void tagTheResultsOfASearch() throws Exception {
+        // more than a page of the cursor of DocumentTagger
+        for(int cpt = 0; cpt < 1500; cpt++) {
+            add(String.format("%04d", cpt), "report" + cpt + ".pdf", body, "old");
+        }
+        add("invoice", "invoice.pdf", "The invoice of the consulting services delivered to our customer last month.", "old");
+        solrClient.commit("documents");
+
+        mockMvc.perform(post("/api/v1/documents/tags").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\": \"Report\", \"add\": [\"sales\"], \"remove\": [\"old\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("1500"));
+
+        assertEquals(Collections.singletonList("sales"), solrClient.getById("documents", "0000").getFieldValues("tags_ss"));
+        assertEquals(Collections.singletonList("sales"), solrClient.getById("documents", "1499").getFieldValues("tags_ss"));
+        assertEquals("report1499.pdf", solrClient.getById("documents", "1499").getFieldValue("name_s"));
+        assertEquals(Collections.singletonList("old"), solrClient.getById("documents", "invoice").getFieldValues("tags_ss"));
+
+        // neither ids nor query
+        mockMvc.perform(post("/api/v1/documents/tags").contentType(MediaType.APPLICATION_JSON).content("{\"add\": [\"sales\"]}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void sameDocuments() throws Exception {
+        File folder = new File("target/same-documents").getAbsoluteFile();
+        FileUtils.deleteDirectory(folder);
+        EmbeddedSolrConfiguration.writePdf(new File(folder, "report.pdf"), MinHashTest.text);
+        EmbeddedSolrConfiguration.writePdf(new File(folder, "edited.pdf"), MinHashTest.text.replace("twelve percent", "fifteen percent"));
+        EmbeddedSolrConfiguration.writePdf(new File(folder, "invoice.pdf"), "The invoice of the consulting services delivered last month to our customer, " +
+                "to be paid within thirty days by bank transfer to the account written at the bottom of this page. " +
+                "The services are the audit of the network, the installation of the new servers and the training of the team.");
+        FileUtils.copyFile(new File(folder, "report.pdf"), new File(folder, "copies/renamed report.pdf"));
+
+        IndexingJob job = indexingJobService.submit(folder.getPath(), "documents", false);
+        for(int cpt = 0; cpt < 600 && job.isActive(); cpt++) {
+            Thread.sleep(100);
+        }
+        assertEquals(IndexingJob.Status.DONE, job.getStatus());
+
+        mockMvc.perform(get("/api/v1/documents/" + DigestUtils.sha256Hex("report.pdf") + "/same"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.numFound").value(2))
+                // the copy first
+                .andExpect(jsonPath("$.documents[0].url").value("copies/renamed report.pdf"))
+                .andExpect(jsonPath("$.documents[0].similarity").value(1.0))
+                .andExpect(jsonPath("$.documents[1].url").value("edited.pdf"))
+                .andExpect(jsonPath("$.documents[1].similarity").value(greaterThan(0.8)));
+
+        mockMvc.perform(get("/api/v1/documents/" + DigestUtils.sha256Hex("invoice.pdf") + "/same"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.numFound").value(0));
+
+        mockMvc.perform(get("/api/v1/documents/unknown/same"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static String search(ResultActions result) throws Exception {
+        return result.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+    }
+
+    private static List<String> ids(String searchResult) {
+        return JsonPath.read(searchResult, "$.documents[*].id");
+    }
+
+    private void add(String id, String name, String text, String... tags) throws Exception {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", id);
+        document.addField("path_descendent_path", "folder/" + name);
+        document.addField("path_txt", "folder/" + name);
+        document.addField("name_s", name);
+        document.addField("name_txt", name);
+        document.addField("md5_s", id);
+        document.addField("body_txt", text);
+        document.addField("body_txt_en", text);
+        document.addField("lang_s", "en");
+        for(String tag : tags) {
+            document.addField("tags_ss", tag);
+        }
+        solrClient.add("documents", document);
+    }
+}
@@ -0,0 +1,137 @@
+package fr.grozeille.documentanalysis.rest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.core.CoreContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Size of the responses of Solr (javabin, as sent to the api) and latency of the search and "same" queries,
+ * with all the stored fields (before) and with the fields read by DocumentController only (after).
+ * Run with: mvn test -Dtest=SearchProjectionBenchmarkIT
+ */
+@Slf4j
+public class SearchProjectionBenchmarkIT {
+
+    private static final int documents = 200;
+
+    private static final int runs = 50;
+
+    private static final String body = "The quarterly report describes the activity of the sales department, " +
+            "the new contracts signed with our customers and the objectives for the next year. ";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EmbeddedSolrServer solrClient;
+
+    @Before
+    public void setUp() throws Exception {
+        File solrHome = folder.newFolder("solr");
+        FileUtils.copyDirectory(new File(getClass().getResource("/solr").toURI()), solrHome);
+        solrClient = new EmbeddedSolrServer(CoreContainer.createAndLoad(solrHome.toPath()), "documents");
+
+        // ~150KB of text per document, all with the same name
+        String bodyText = String.join("", Collections.nCopies(1000, body));
+        for(int cpt = 0; cpt < documents; cpt++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.addField("id", String.format("%05d", cpt));
+            document.addField("path_descendent_path", "folder" + cpt + "/report.pdf");
+            document.addField("path_txt", "folder" + cpt + "/report.pdf");
+            document.addField("name_s", "report.pdf");
+            document.addField("name_txt", "report.pdf");
+            document.addField("md5_s", "0123456789ABCDEF0123456789ABCDEF");
+            document.addField("body_txt", bodyText);
+            document.addField("body_txt_en", bodyText);
+            document.addField("lang_s", "en");
+            document.addField("tags_ss", "sales");
+            solrClient.add("documents", document);
+        }
+        solrClient.commit("documents");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        solrClient.close();
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        SolrQuery search = new SolrQuery("body_txt_en:contracts OR name_txt:contracts OR path_txt:contracts");
+        search.addHighlightField("body_txt_en");
+        search.addHighlightField("name_txt");
+        search.addHighlightField("path_txt");
+        search.setHighlight(true);
+        search.setHighlightFragsize(512);
+        search.setRows(20);
+
+        SolrQuery same = new SolrQuery("md5_s:0123456789ABCDEF0123456789ABCDEF");
+        same.setRows(documents);
+
+        long[] searchAll = measure(search);
+        long[] sameAll = measure(same);
+
+        search.setFields(DocumentController.documentFields);
+        same.setFields(DocumentController.sameDocumentFields);
+        long[] searchProjected = measure(search);
+        long[] sameProjected = measure(same);
+
+        // highlighted extracts of a page cut to the response budget
+        QueryResponse response = solrClient.query("documents", search);
+        long highlightChars = 0;
+        long truncatedChars = 0;
+        for(Map<String, List<String>> highlights : response.getHighlighting().values()) {
+            for(String highlight : highlights.getOrDefault("body_txt_en", Collections.emptyList())) {
+                highlightChars += highlight.length();
+                truncatedChars += DocumentController.truncateHighlight(highlight, 4096 / 20).length();
+            }
+        }
+
+        log.info("Search, all fields: " + (searchAll[0] / 1024) + " KB, " + (searchAll[1] / 1000) + " us");
+        log.info("Search, projected: " + (searchProjected[0] / 1024) + " KB, " + (searchProjected[1] / 1000) + " us");
+        log.info("Same, all fields: " + (sameAll[0] / 1024) + " KB, " + (sameAll[1] / 1000) + " us");
+        log.info("Same, projected: " + (sameProjected[0] / 1024) + " KB, " + (sameProjected[1] / 1000) + " us");
+        log.info("Highlights of a page: " + highlightChars + " chars, " + truncatedChars + " with a budget of 4096 chars");
+
+        assertTrue(searchProjected[0] * 10 < searchAll[0]);
+        assertTrue(sameProjected[0] * 10 < sameAll[0]);
+    }
+
+    /**
+     * Size of the javabin response (bytes) and average latency of the query with the serialization (ns).
+     */
+    private long[] measure(SolrQuery query) throws Exception {
+        // warm up
+        for(int cpt = 0; cpt < 5; cpt++) {
+            solrClient.query("documents", query);
+        }
+
+        long bytes = 0;
+        long start = System.nanoTime();
+        for(int cpt = 0; cpt < runs; cpt++) {
+            QueryResponse response = solrClient.query("documents", query);
+            CountingOutputStream output = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+            new JavaBinCodec().marshal(response.getResponse(), output);
+            bytes = output.getByteCount();
+        }
+        return new long[]{bytes, (System.nanoTime() - start) / runs};
+    }
+}
@@ -0,0 +1,42 @@
+package fr.grozeille.documentanalysis.service;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.common.SolrException;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveBatchSizeTest {
+
+    @Test
+    public void rejectedDocumentKeepsTheSize() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, 10, 1000, AdaptiveBatchSize.DEFAULT_MAX_BYTES, 2000);
+
+        // a bad document bisected down to a batch of 1
+        for(int documents = 100; documents >= 1; documents /= 2) {
+            batchSize.onFailure(documents, new SolrException(SolrException.ErrorCode.BAD_REQUEST, "unknown field"));
+        }
+
+        assertEquals(100, batchSize.getStats().getBatchSize());
+    }
+
+    @Test
+    public void overloadedSolrHalvesTheSize() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, 10, 1000, AdaptiveBatchSize.DEFAULT_MAX_BYTES, 2000);
+
+        batchSize.onFailure(100, new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "overloaded"));
+        assertEquals(50, batchSize.getStats().getBatchSize());
+
+        batchSize.onFailure(50, new HttpSolrClient.RemoteSolrException("localhost", 429, "too many requests", null));
+        assertEquals(25, batchSize.getStats().getBatchSize());
+
+        batchSize.onFailure(25, new SolrServerException(new SocketTimeoutException("Read timed out")));
+        assertEquals(12, batchSize.getStats().getBatchSize());
+
+        batchSize.onFailure(12, new SolrServerException("Connection refused"));
+        assertEquals(10, batchSize.getStats().getBatchSize());
+    }
+}
@@ -0,0 +1,70 @@
+package fr.grozeille.documentanalysis.service;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class BisectingRetryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rejectedDocumentIsIsolated() throws Exception {
+        AtomicInteger sends = new AtomicInteger();
+        try(DeadLetterFile deadLetterFile = new DeadLetterFile(folder.getRoot())) {
+            BisectingRetry retry = new BisectingRetry(3, 0, deadLetterFile);
+
+            int failed = retry.send(documents(8), batch -> {
+                sends.incrementAndGet();
+                for(SolrInputDocument document : batch) {
+                    if("5".equals(document.getFieldValue("id"))) {
+                        throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "unknown field");
+                    }
+                }
+            });
+
+            assertEquals(1, failed);
+            assertEquals(1, deadLetterFile.getCount());
+            // 8, 4 + 4, 2 + 2, 1 + 1: not retried
+            assertEquals(7, sends.get());
+        }
+    }
+
+    @Test
+    public void unavailableSolrIsNotBisected() throws Exception {
+        AtomicInteger sends = new AtomicInteger();
+        try(DeadLetterFile deadLetterFile = new DeadLetterFile(folder.getRoot())) {
+            BisectingRetry retry = new BisectingRetry(3, 0, deadLetterFile);
+
+            int failed = retry.send(documents(100), batch -> {
+                sends.incrementAndGet();
+                throw new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "no servers hosting shard");
+            });
+
+            assertEquals(100, failed);
+            assertEquals(100, deadLetterFile.getCount());
+            // the retries of the whole batch only
+            assertEquals(4, sends.get());
+        }
+    }
+
+    private static List<SolrInputDocument> documents(int count) {
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for(int cpt = 0; cpt < count; cpt++) {
+            SolrInputDocument document = new SolrInputDocument();
+            document.addField("id", String.valueOf(cpt));
+            document.addField("path_txt", "folder/" + cpt + ".pdf");
+            documents.add(document);
+        }
+        return documents;
+    }
+}
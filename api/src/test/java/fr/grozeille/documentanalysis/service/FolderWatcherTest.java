@@ -0,0 +1,88 @@
+package fr.grozeille.documentanalysis.service;
+
+import fr.grozeille.documentanalysis.DocumentAnalysisApiApplication;
+import fr.grozeille.documentanalysis.EmbeddedSolrConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {DocumentAnalysisApiApplication.class, EmbeddedSolrConfiguration.class}, properties = {
+        "document-analysis.indexer-path=target/watched-documents",
+        "document-analysis.watch-enabled=true",
+        "document-analysis.watch-debounce-millis=500"})
+@ActiveProfiles("embedded-solr")
+public class FolderWatcherTest {
+
+    private static final File root = new File("target/watched-documents");
+
+    // the changes are searchable after the debounce, the parsing and the commit of the job
+    private static final long maxLatency = 10000;
+
+    private static final String text = "The quarterly report describes the activity of the sales department during the last three months, " +
+            "the new contracts signed with our customers in Europe and the objectives of the team for the next year.";
+
+    @Autowired
+    private SolrClient solrClient;
+
+    @BeforeClass
+    public static void createRoot() throws Exception {
+        // watched from the start of the application
+        FileUtils.deleteDirectory(root);
+        root.mkdirs();
+    }
+
+    @Test
+    public void changesAreSearchableWithinSeconds() throws Exception {
+        // a new file in a new folder
+        EmbeddedSolrConfiguration.writePdf(new File(root, "sales/report.pdf"), text);
+        long latency = waitFor("name_s:report.pdf", 1);
+        assertTrue("indexed after " + latency + " ms", latency < maxLatency);
+
+        EmbeddedSolrConfiguration.writePdf(new File(root, "sales/contracts.pdf"), text.replace("report", "summary"));
+        latency = waitFor("name_s:contracts.pdf", 1);
+        assertTrue("indexed after " + latency + " ms", latency < maxLatency);
+
+        FileUtils.forceDelete(new File(root, "sales/report.pdf"));
+        latency = waitFor("name_s:report.pdf", 0);
+        assertTrue("deleted after " + latency + " ms", latency < maxLatency);
+
+        // the rest of the folder is not indexed again
+        assertEquals(1, count("name_s:contracts.pdf"));
+    }
+
+    @Test
+    public void changedPathsAreCoalesced() {
+        assertEquals(Arrays.asList("a", "c.pdf"), FolderWatcher.coalesce(Arrays.asList("a/b.pdf", "a", "c.pdf", "a/d/e.pdf")));
+        assertEquals(Arrays.asList(""), FolderWatcher.coalesce(Arrays.asList("a/b.pdf", "")));
+    }
+
+    /**
+     * Time until the query finds the expected number of documents.
+     */
+    private long waitFor(String query, long expected) throws Exception {
+        long start = System.currentTimeMillis();
+        while(count(query) != expected && System.currentTimeMillis() - start < maxLatency * 3) {
+            Thread.sleep(100);
+        }
+        assertEquals(expected, count(query));
+        return System.currentTimeMillis() - start;
+    }
+
+    private long count(String query) throws Exception {
+        return solrClient.query("documents", new SolrQuery(query)).getResults().getNumFound();
+    }
+}
@@ -0,0 +1,91 @@
+package fr.grozeille.documentanalysis.service;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Blue/green rebuild against an embedded Solr.
+ * Run with: mvn test -Dtest=IndexSwitcherIT
+ */
+public class IndexSwitcherIT {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CoreContainer coreContainer;
+
+    private EmbeddedSolrServer solrClient;
+
+    @Before
+    public void setUp() throws Exception {
+        File solrHome = folder.newFolder("solr");
+        FileUtils.copyDirectory(new File(getClass().getResource("/solr").toURI()), solrHome);
+
+        coreContainer = CoreContainer.createAndLoad(solrHome.toPath());
+        solrClient = new EmbeddedSolrServer(coreContainer, "documents");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        solrClient.close();
+    }
+
+    @Test
+    public void swap() throws Exception {
+        add("documents", "old");
+
+        try(IndexSwitcher indexSwitcher = new IndexSwitcher(solrClient, "documents", 0)) {
+            String buildIndex = indexSwitcher.createBuildIndex("documents");
+            add(buildIndex, "new");
+
+            // the live index is not modified by the rebuild
+            assertEquals("old", firstId("documents"));
+
+            indexSwitcher.swap("documents", buildIndex);
+            assertEquals("new", firstId("documents"));
+
+            // previous content dropped after the retention
+            for(int cpt = 0; cpt < 100 && indexSwitcher.exists(buildIndex); cpt++) {
+                Thread.sleep(100);
+            }
+            assertFalse(indexSwitcher.exists(buildIndex));
+            assertTrue(indexSwitcher.exists("documents"));
+        }
+    }
+
+    @Test
+    public void firstBuild() throws Exception {
+        try(IndexSwitcher indexSwitcher = new IndexSwitcher(solrClient, "documents", 0)) {
+            String buildIndex = indexSwitcher.createBuildIndex("others");
+            add(buildIndex, "new");
+
+            indexSwitcher.swap("others", buildIndex);
+            assertEquals("new", firstId("others"));
+            assertFalse(indexSwitcher.exists(buildIndex));
+        }
+    }
+
+    private void add(String index, String id) throws Exception {
+        SolrInputDocument document = new SolrInputDocument();
+        document.addField("id", id);
+        document.addField("name_s", id);
+        solrClient.add(index, document);
+        solrClient.commit(index);
+    }
+
+    private String firstId(String index) throws Exception {
+        return solrClient.query(index, new SolrQuery("*:*")).getResults().get(0).getFieldValue("id").toString();
+    }
+}
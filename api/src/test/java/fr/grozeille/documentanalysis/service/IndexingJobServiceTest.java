@@ -0,0 +1,168 @@
+package fr.grozeille.documentanalysis.service;
+
+import fr.grozeille.documentanalysis.ApplicationConfiguration;
+import fr.grozeille.documentanalysis.DocumentAnalysisApiApplication;
+import fr.grozeille.documentanalysis.EmbeddedSolrConfiguration;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.SolrDocument;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {DocumentAnalysisApiApplication.class, EmbeddedSolrConfiguration.class}, properties = {
+        "document-analysis.indexer-path=target/indexed-documents"})
+@ActiveProfiles("embedded-solr")
+public class IndexingJobServiceTest {
+
+    private static final File root = new File("target/indexed-documents").getAbsoluteFile();
+
+    private static final String text = "The quarterly report describes the activity of the sales department during the last three months, " +
+            "the new contracts signed with our customers in Europe and the objectives of the team for the next year.";
+
+    @Autowired
+    private IndexingJobService indexingJobService;
+
+    @Autowired
+    private SolrClient solrClient;
+
+    @Autowired
+    private ApplicationConfiguration configuration;
+
+    @Before
+    public void indexRoot() throws Exception {
+        FileUtils.deleteDirectory(root);
+        for(String path : new String[]{"a/1.pdf", "a/2.pdf", "a b.pdf", "b/1.pdf"}) {
+            EmbeddedSolrConfiguration.writePdf(new File(root, path), text);
+        }
+
+        IndexingJob job = waitFor(indexingJobService.submit(root.getPath(), "documents", false));
+        assertEquals(IndexingJob.Status.DONE, job.getStatus());
+        assertEquals(set("a/1.pdf", "a/2.pdf", "a b.pdf", "b/1.pdf"), indexedPaths());
+    }
+
+    @Test
+    public void subFolderReplacesOnlyItsDocuments() throws Exception {
+        FileUtils.forceDelete(new File(root, "a/1.pdf"));
+        EmbeddedSolrConfiguration.writePdf(new File(root, "a/3.pdf"), text);
+        // not under a/, not indexed by the job of a/
+        EmbeddedSolrConfiguration.writePdf(new File(root, "b/2.pdf"), text);
+        SolrDocument before = solrClient.getById("documents", DigestUtils.sha256Hex("b/1.pdf"));
+
+        IndexingJob job = waitFor(indexingJobService.submit(new File(root, "a").getPath(), "documents", false));
+
+        assertEquals(IndexingJob.Status.DONE, job.getStatus());
+        assertEquals(set("a/2.pdf", "a/3.pdf", "a b.pdf", "b/1.pdf"), indexedPaths());
+        // the ids stay relative to the indexer path, the documents outside a/ are not sent again
+        assertEquals(before.getFieldValue("_version_"), solrClient.getById("documents", DigestUtils.sha256Hex("b/1.pdf")).getFieldValue("_version_"));
+    }
+
+    @Test
+    public void subFoldersAreIndexedAtTheSameTime() throws Exception {
+        IndexingJob jobA = indexingJobService.submit(new File(root, "a").getPath(), "documents", false);
+        IndexingJob jobB = indexingJobService.submit(new File(root, "b").getPath(), "documents", false);
+
+        // the root contains the folders being indexed
+        try {
+            indexingJobService.submit(root.getPath(), "documents", false);
+            fail("the root is indexed while its sub folders are indexed");
+        }
+        catch(IllegalStateException ex) {
+            // expected
+        }
+        try {
+            indexingJobService.submit(new File(root, "a").getPath(), "documents", true);
+            fail("a folder is indexed by two jobs");
+        }
+        catch(IllegalStateException ex) {
+            // expected
+        }
+
+        assertEquals(IndexingJob.Status.DONE, waitFor(jobA).getStatus());
+        assertEquals(IndexingJob.Status.DONE, waitFor(jobB).getStatus());
+        assertEquals(set("a/1.pdf", "a/2.pdf", "a b.pdf", "b/1.pdf"), indexedPaths());
+    }
+
+    @Test
+    public void unreadablePathsAreNotDeleted() throws Exception {
+        // a folder of a share not reachable for a moment: its attributes can't be read
+        File moved = new File(root.getParentFile(), "indexed-documents-a");
+        FileUtils.deleteDirectory(moved);
+        FileUtils.moveDirectory(new File(root, "a"), moved);
+        Path link = Files.createSymbolicLink(new File(root, "a").toPath(), new File(root, "unreachable").toPath());
+        try {
+            FileUtils.forceDelete(new File(root, "b/1.pdf"));
+
+            IndexingJob job = waitFor(indexingJobService.submit(root.getPath(), "documents", true));
+
+            assertEquals(IndexingJob.Status.DONE, job.getStatus());
+            // only the deleted file of the folders read is deleted
+            assertEquals(set("a/1.pdf", "a/2.pdf", "a b.pdf"), indexedPaths());
+        }
+        finally {
+            Files.delete(link);
+            FileUtils.deleteDirectory(moved);
+        }
+    }
+
+    @Test
+    public void errorsOfTheParsersFinishTheJob() throws Exception {
+        DocumentIndexer documentIndexer = Mockito.mock(DocumentIndexer.class);
+        Mockito.doThrow(new StackOverflowError()).when(documentIndexer).index(Mockito.any());
+        IndexingJobService service = new IndexingJobService();
+        ReflectionTestUtils.setField(service, "configuration", configuration);
+        ReflectionTestUtils.setField(service, "documentIndexer", documentIndexer);
+        service.init();
+        try {
+            IndexingJob job = waitFor(service.submit(root.getPath(), "documents", false));
+            assertEquals(IndexingJob.Status.FAILED, job.getStatus());
+            assertEquals("java.lang.StackOverflowError", job.getProgress().getError());
+
+            // the folder is not held by the failed job
+            Mockito.doNothing().when(documentIndexer).index(Mockito.any());
+            assertEquals(IndexingJob.Status.DONE, waitFor(service.submit(root.getPath(), "documents", false)).getStatus());
+        }
+        finally {
+            service.shutdown();
+        }
+    }
+
+    private IndexingJob waitFor(IndexingJob job) throws InterruptedException {
+        for(int cpt = 0; cpt < 600 && job.isActive(); cpt++) {
+            Thread.sleep(100);
+        }
+        return job;
+    }
+
+    private Set<String> indexedPaths() throws Exception {
+        SolrQuery query = new SolrQuery("*:*");
+        query.setRows(100);
+        Set<String> paths = new TreeSet<>();
+        for(SolrDocument document : solrClient.query("documents", query).getResults()) {
+            paths.add(document.getFieldValue("path_descendent_path").toString());
+        }
+        return paths;
+    }
+
+    private static Set<String> set(String... paths) {
+        return new TreeSet<>(Arrays.asList(paths));
+    }
+}
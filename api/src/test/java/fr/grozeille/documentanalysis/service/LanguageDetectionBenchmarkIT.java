@@ -0,0 +1,94 @@
+package fr.grozeille.documentanalysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.langdetect.OptimaizeLangDetector;
+import org.apache.tika.language.detect.LanguageDetector;
+import org.apache.tika.language.detect.LanguageResult;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Per-document cost of the language detection, before (model loaded for each document) and after (shared service).
+ * Run with: mvn test -Dtest=LanguageDetectionBenchmarkIT
+ */
+@Slf4j
+public class LanguageDetectionBenchmarkIT {
+
+    private static final int documents = 500;
+
+    private static final String english = "The quarterly report describes the activity of the sales department, " +
+            "the new contracts signed with our customers and the objectives for the next year. ";
+
+    private static final String french = "Le rapport trimestriel décrit l'activité du service commercial, " +
+            "les nouveaux contrats signés avec nos clients et les objectifs pour l'année prochaine. ";
+
+    @Test
+    public void benchmark() throws Exception {
+        List<String> bodies = new ArrayList<>();
+        for(int cpt = 0; cpt < documents; cpt++) {
+            bodies.add(String.join("", Collections.nCopies(20 + cpt % 500, cpt % 2 == 0 ? english : french)));
+        }
+
+        Set<String> subset = new HashSet<>(Arrays.asList("en", "fr"));
+
+        // warm up
+        new OptimaizeLangDetector().loadModels().detect(english);
+
+        long startDate = System.nanoTime();
+        for(String body : bodies) {
+            LanguageDetector detector = new OptimaizeLangDetector().loadModels();
+            detector.detect(body);
+        }
+        long before = System.nanoTime() - startDate;
+
+        startDate = System.nanoTime();
+        for(String body : bodies.subList(0, 50)) {
+            LanguageDetector detector = new OptimaizeLangDetector().loadModels(subset);
+            detector.detect(body);
+        }
+        long beforeSubset = (System.nanoTime() - startDate) * (documents / 50);
+
+        startDate = System.nanoTime();
+        LanguageDetectionService service = new LanguageDetectionService(Collections.emptyList(), LanguageDetectionService.DEFAULT_MAX_CHARS);
+        long loading = System.nanoTime() - startDate;
+
+        startDate = System.nanoTime();
+        for(String body : bodies) {
+            service.detect(body);
+        }
+        long after = System.nanoTime() - startDate;
+
+        LanguageDetectionService subsetService = new LanguageDetectionService(subset, LanguageDetectionService.DEFAULT_MAX_CHARS);
+        startDate = System.nanoTime();
+        for(String body : bodies) {
+            subsetService.detect(body);
+        }
+        long afterSubset = System.nanoTime() - startDate;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        startDate = System.nanoTime();
+        List<Future<LanguageResult>> results = new ArrayList<>();
+        for(String body : bodies) {
+            results.add(executor.submit(() -> service.detect(body)));
+        }
+        for(int cpt = 0; cpt < documents; cpt++) {
+            assertEquals(cpt % 2 == 0 ? "en" : "fr", results.get(cpt).get().getLanguage());
+        }
+        long concurrent = System.nanoTime() - startDate;
+        executor.shutdown();
+
+        log.info("Before, all languages: " + (before / documents / 1000) + " us/doc");
+        log.info("Before, en+fr only: " + (beforeSubset / documents / 1000) + " us/doc");
+        log.info("Shared service, model loading: " + (loading / 1000000) + " ms once");
+        log.info("Shared service, all languages: " + (after / documents / 1000) + " us/doc");
+        log.info("Shared service, en+fr only: " + (afterSubset / documents / 1000) + " us/doc");
+        log.info("Shared service, " + threads + " threads: " + (concurrent / documents / 1000) + " us/doc");
+    }
+}
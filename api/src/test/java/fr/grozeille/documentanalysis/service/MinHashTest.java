@@ -0,0 +1,83 @@
+package fr.grozeille.documentanalysis.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MinHashTest {
+
+    public static final String text = "The quarterly report describes the activity of the sales department during the last three months. " +
+            "The new contracts signed with our customers in Europe grew by twelve percent, mostly in Germany and in Spain, " +
+            "while the renewals of the existing contracts stayed at the level of the previous quarter. " +
+            "The team hired two account managers and opened an office in Madrid to follow the customers of the south of Europe. " +
+            "The objectives of the next quarter are the launch of the new catalogue, the training of the new account managers " +
+            "and a better follow up of the quotes sent to the customers who didn't answer yet.";
+
+    @Test
+    public void sameTextSameSignature() {
+        int[] signature = MinHash.signature(text);
+
+        assertEquals(MinHash.HASHES, signature.length);
+        assertArrayEquals(signature, MinHash.signature(text));
+        // only the words are hashed
+        assertArrayEquals(signature, MinHash.signature(text.toUpperCase().replace(" ", "\n  ").replace(".", " !")));
+        assertEquals(MinHash.bands(signature), MinHash.bands(MinHash.signature(text)));
+        assertEquals(1.0, MinHash.similarity(signature, MinHash.signature(text)), 0.0);
+    }
+
+    /**
+     * The indexer and the api must compute the same signatures: the same values are pinned in the MinHashTest of the other module.
+     */
+    @Test
+    public void signatureOfAFixedText() {
+        int[] signature = MinHash.signature("Near duplicates are found with the bands of their MinHash signatures, computed by the indexer and by the api.");
+
+        assertArrayEquals(new int[]{-1043562979, -1346882710, -1522963232, -1969796773}, Arrays.copyOf(signature, 4));
+        assertEquals(-358143234, Arrays.hashCode(signature));
+        assertEquals(Arrays.asList("0_96fc030cafd24d02", "1_14c470dda941577e", "2_dee461c2302a4280", "3_e5b5a701a357bcfb",
+                "4_7f5598c9b5703d88", "5_8ec37526e20870f", "6_a6dcdc7db7d38e7", "7_f5421c913967401",
+                "8_be5eec9466c71b0a", "9_830177446dfd", "10_ddbb318e8689dac9", "11_40759bf44eb0b6d9",
+                "12_f3c89b79709a95ad", "13_5ec6ffb463c689af", "14_93c41c0dd65e9cf9", "15_4224ad578bd72ae9"), MinHash.bands(signature));
+    }
+
+    @Test
+    public void nearDuplicatesAreSimilar() {
+        int[] signature = MinHash.signature(text);
+        int[] edited = MinHash.signature(text.replace("twelve percent", "fifteen percent"));
+        int[] unrelated = MinHash.signature("The invoice of the consulting services delivered last month to our customer, " +
+                "to be paid within thirty days by bank transfer to the account written at the bottom of this page.");
+
+        assertTrue(MinHash.similarity(signature, edited) > 0.8);
+        assertTrue(MinHash.similarity(signature, unrelated) < 0.2);
+
+        // found by a shared band
+        List<String> sharedBands = new ArrayList<>(MinHash.bands(signature));
+        sharedBands.retainAll(MinHash.bands(edited));
+        assertFalse(sharedBands.isEmpty());
+        sharedBands = new ArrayList<>(MinHash.bands(signature));
+        sharedBands.retainAll(MinHash.bands(unrelated));
+        assertTrue(sharedBands.isEmpty());
+    }
+
+    @Test
+    public void textWithoutWords() {
+        assertNull(MinHash.signature(null));
+        assertNull(MinHash.signature(" ... "));
+        // a text shorter than a shingle
+        assertNotNull(MinHash.signature("report"));
+    }
+
+    @Test
+    public void encodeDecode() {
+        int[] signature = MinHash.signature(text);
+
+        assertArrayEquals(signature, MinHash.decode(MinHash.encode(signature)));
+        assertNull(MinHash.decode(null));
+        assertNull(MinHash.decode("not a signature!"));
+        assertNull(MinHash.decode("AAAA"));
+    }
+}
@@ -4,7 +4,7 @@
     --master k8s://https://192.168.0.151:8443/k8s/clusters/c-slscp  \
     --deploy-mode cluster \
     --name demo-spark \
-    --class org.grozeille.App \
+    --class fr.grozeille.job.FullJob \
     --conf spark.kubernetes.namespace=spark \
     --conf spark.kubernetes.node.selector.spark-role=executor \
     --conf spark.kubernetes.authenticate.driver.serviceAccountName=spark \
@@ -12,12 +12,14 @@
     --conf spark.eventLog.enabled=true \
     --conf spark.eventLog.dir=hdfs://lenovo01/tmp/spark-logs \
     --conf spark.kubernetes.container.image=grozeille/spark:latest \
-    hdfs://lenovo01/user/root/spark-demo-1.0-SNAPSHOT.jar
+    hdfs://lenovo01/user/root/spark-demo-1.0-SNAPSHOT.jar \
+    -i hdfs://lenovo01/user/root/raw -o hdfs://lenovo01/user/root/parsed
 
 
 ~/Work/tools/spark-2.4.3-bin-hadoop2.7/bin/spark-submit \
     --master local[3]  \
     --name demo-spark \
-    --class org.grozeille.App \
-    target/spark-demo-1.0-SNAPSHOT.jar
+    --class fr.grozeille.job.FullJob \
+    target/document-analysis-indexer-1.0-SNAPSHOT.jar \
+    -i raw -o parsed
 
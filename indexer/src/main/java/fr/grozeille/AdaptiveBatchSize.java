@@ -0,0 +1,146 @@
+package fr.grozeille;
+
+import lombok.Data;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+/**
+ * Size of the batches sent to Solr, limited by a number of documents and by a number of bytes
+ * (a few big bodies are enough to reach the max request size of Solr).
+ * The number of documents adapts to the latency of Solr: it is halved when a request is slower than the target latency
+ * or fails because Solr is unreachable or overloaded, and grows by 10% when a request is faster than half the target latency.
+ */
+public class AdaptiveBatchSize {
+
+    public static final int DEFAULT_MIN_SIZE = 10;
+
+    public static final int DEFAULT_MAX_SIZE = 5000;
+
+    public static final long DEFAULT_MAX_BYTES = 1024l*1024l*16l;
+
+    public static final long DEFAULT_TARGET_LATENCY = 2000;
+
+    // weight of the last request in the averages
+    private static final double smoothing = 0.2;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long maxBytes;
+
+    private final long targetLatency;
+
+    private int batchSize;
+
+    private long requests = 0;
+
+    private double averageBytes = 0;
+
+    private double averageLatency = 0;
+
+    public AdaptiveBatchSize(int initialSize, int minSize, int maxSize, long maxBytes, long targetLatency) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.targetLatency = targetLatency;
+        this.batchSize = Math.max(minSize, Math.min(maxSize, initialSize));
+    }
+
+    public AdaptiveBatchSize(int initialSize, long maxBytes, long targetLatency) {
+        this(initialSize, Math.min(DEFAULT_MIN_SIZE, initialSize), Math.max(DEFAULT_MAX_SIZE, initialSize), maxBytes, targetLatency);
+    }
+
+    /**
+     * A batch of documents and bytes must be sent, a single document bigger than maxBytes is sent alone.
+     */
+    public synchronized boolean isFull(int documents, long bytes) {
+        return documents >= batchSize || bytes >= maxBytes;
+    }
+
+    /**
+     * A document added to a batch of this size would exceed the max bytes, the batch must be sent first.
+     */
+    public boolean isOverflow(int documents, long bytes, long documentBytes) {
+        return documents > 0 && bytes + documentBytes > maxBytes;
+    }
+
+    public synchronized void onSuccess(int documents, long bytes, long latency) {
+        requests++;
+        averageBytes = requests == 1 ? bytes : averageBytes + smoothing * (bytes - averageBytes);
+        averageLatency = requests == 1 ? latency : averageLatency + smoothing * (latency - averageLatency);
+
+        if(latency > targetLatency) {
+            batchSize = Math.max(minSize, Math.min(batchSize, documents) / 2);
+        }
+        else if(latency < targetLatency / 2 && documents >= batchSize) {
+            // only grow when the batch was really full by count, not cut by the bytes or by the end of the input
+            batchSize = Math.min(maxSize, batchSize + Math.max(1, batchSize / 10));
+        }
+    }
+
+    /**
+     * Only the connection errors, timeouts, 5xx and 429 reduce the batches: the documents rejected by Solr (4xx)
+     * go to the dead letter file, one bad document must not slow down the rest of the run.
+     */
+    public synchronized void onFailure(int documents, Exception error) {
+        if(isRejection(error)) {
+            return;
+        }
+        batchSize = Math.max(minSize, Math.min(batchSize, documents) / 2);
+    }
+
+    private static boolean isRejection(Exception error) {
+        if(!(error instanceof SolrException)) {
+            return false;
+        }
+        int code = ((SolrException) error).code();
+        return code >= 400 && code < 500 && code != 429;
+    }
+
+    public synchronized Stats getStats() {
+        Stats stats = new Stats();
+        stats.setBatchSize(batchSize);
+        stats.setMaxBytes(maxBytes);
+        stats.setRequests(requests);
+        stats.setBytesPerRequest((long) averageBytes);
+        stats.setLatency((long) averageLatency);
+        return stats;
+    }
+
+    /**
+     * Approximate size of the document in a request: the size of its values (1 byte per char for the text).
+     */
+    public static long sizeOf(SolrInputDocument document) {
+        long size = 0;
+        for(SolrInputField field : document) {
+            size += field.getName().length();
+            for(Object value : field) {
+                if(value instanceof CharSequence) {
+                    size += ((CharSequence) value).length();
+                }
+                else if(value instanceof byte[]) {
+                    size += ((byte[]) value).length;
+                }
+                else {
+                    size += 8;
+                }
+            }
+        }
+        return size;
+    }
+
+    @Data
+    public static class Stats {
+        private int batchSize;
+
+        private long maxBytes;
+
+        private long requests;
+
+        private long bytesPerRequest;
+
+        private long latency;
+    }
+}
@@ -0,0 +1,68 @@
+package fr.grozeille;
+
+import lombok.Data;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.io.DatumReader;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Byte range of an Avro container file, so that the blocks of one big file can be read by several workers.
+ * A block belongs to the split containing the sync marker just before it, the usual way to split Avro files:
+ * <pre>
+ * try(DataFileReader&lt;D&gt; reader = split.open(datumReader)) {
+ *     while(reader.hasNext() &amp;&amp; !reader.pastSync(split.getEnd())) {
+ *         D record = reader.next();
+ *     }
+ * }
+ * </pre>
+ */
+@Data
+public class AvroSplit {
+
+    private final File file;
+
+    private final int index;
+
+    private final long start;
+
+    private final long end;
+
+    private final boolean last;
+
+    public static List<AvroSplit> split(File file, long splitSize) {
+        long length = file.length();
+        List<AvroSplit> splits = new ArrayList<>();
+        if(splitSize <= 0 || length <= splitSize) {
+            splits.add(new AvroSplit(file, 0, 0, length, true));
+            return splits;
+        }
+
+        int index = 0;
+        for(long start = 0; start < length; start += splitSize) {
+            long end = Math.min(start + splitSize, length);
+            splits.add(new AvroSplit(file, index++, start, end, end == length));
+        }
+        return splits;
+    }
+
+    public <D> DataFileReader<D> open(DatumReader<D> datumReader) throws IOException {
+        DataFileReader<D> reader = new DataFileReader<>(file, datumReader);
+        reader.sync(start);
+        return reader;
+    }
+
+    /**
+     * Name of the output file for this split: the input name when the file is not split, resultNNN-partNNN.avro otherwise.
+     */
+    public String getOutputName() {
+        if(index == 0 && last) {
+            return file.getName();
+        }
+        return FilenameUtils.getBaseName(file.getName()) + "-part" + String.format("%03d", index) + "." + FilenameUtils.getExtension(file.getName());
+    }
+}
@@ -0,0 +1,53 @@
+package fr.grozeille;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Sidecar store of the documents too big to be inlined in the avro files, next to the avro files in a "blobs" folder.
+ * The content is streamed to disk and stored once per md5, the RawDocument only keeps the md5 in its blob field.
+ */
+@Slf4j
+public class BlobStore {
+
+    public static final String FOLDER_NAME = "blobs";
+
+    public static final long DEFAULT_THRESHOLD = 1024l*1024l*64l;
+
+    private final File folder;
+
+    public BlobStore(File parentFolder) {
+        this.folder = new File(parentFolder, FOLDER_NAME);
+    }
+
+    /**
+     * Copy the stream in the store, returns its md5 used as key.
+     */
+    public String put(ContentDigestInputStream stream) throws IOException {
+        folder.mkdirs();
+
+        Path tmpFile = Files.createTempFile(folder.toPath(), "blob", ".tmp");
+        try {
+            Files.copy(stream, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            String md5 = stream.getMd5();
+
+            Path blobFile = get(md5).toPath();
+            if(!Files.exists(blobFile)) {
+                Files.move(tmpFile, blobFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return md5;
+        }
+        finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    public File get(String md5) {
+        return new File(folder, md5);
+    }
+}
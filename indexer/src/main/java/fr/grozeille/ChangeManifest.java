@@ -0,0 +1,133 @@
+package fr.grozeille;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.reflect.ReflectData;
+import org.apache.avro.reflect.ReflectDatumReader;
+import org.apache.avro.reflect.ReflectDatumWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * State of the files (and zip entries) copied by the previous runs of CopyToAvro: path, size, modification time and md5.
+ * A file with the same size and modification time is not read again, a file with the same md5 is not copied again.
+ * Everything in the previous manifest and not seen during this run is reported as deleted.
+ */
+@Slf4j
+public class ChangeManifest {
+
+    public static final String DELETED_FILE_NAME = "deleted.txt";
+
+    // written by a run without manifest when all the files were read, the output contains all the documents
+    public static final String COMPLETE_FILE_NAME = "complete.txt";
+
+    private final NavigableMap<String, ManifestEntry> previous = new TreeMap<>();
+
+    private final Map<String, ManifestEntry> current = new HashMap<>();
+
+    public static ChangeManifest load(File file) throws IOException {
+        ChangeManifest manifest = new ChangeManifest();
+        if(file.exists()) {
+            try(DataFileReader<ManifestEntry> reader = new DataFileReader<>(file, new ReflectDatumReader<>(ManifestEntry.class))) {
+                for(ManifestEntry entry : reader) {
+                    manifest.previous.put(entry.getPath(), entry);
+                }
+            }
+        }
+        log.info("Manifest " + file + ": " + manifest.previous.size() + " entries");
+        return manifest;
+    }
+
+    /**
+     * Keep the previous state of a file, or of an archive with all its entries, when its size and modification time didn't change.
+     */
+    public boolean keepIfUnchanged(String path, long size, long lastModified) {
+        ManifestEntry entry = previous.get(path);
+        if(entry == null || size < 0 || entry.getSize() != size || entry.getLastModified() != lastModified) {
+            return false;
+        }
+
+        current.put(path, entry);
+        if(entry.isArchive()) {
+            keepChildren(path);
+        }
+        return true;
+    }
+
+    /**
+     * Keep the previous state of all the entries of an archive not seen during this run, used when the archive can't be read.
+     */
+    public void keepChildren(String archivePath) {
+        for(ManifestEntry entry : previous.subMap(archivePath + "/", true, archivePath + "/\uffff", true).values()) {
+            current.putIfAbsent(entry.getPath(), entry);
+        }
+    }
+
+    /**
+     * Keep the previous state of a file, or of an archive or a folder with all its entries, used when it can't be read.
+     */
+    public void keep(String path) {
+        ManifestEntry entry = previous.get(path);
+        if(entry != null) {
+            current.put(path, entry);
+        }
+        else {
+            current.remove(path);
+        }
+        keepChildren(path);
+    }
+
+    /**
+     * Keep the previous state of everything not seen during this run, used when the root folder can't be read.
+     */
+    public void keepAll() {
+        for(ManifestEntry entry : previous.values()) {
+            current.putIfAbsent(entry.getPath(), entry);
+        }
+    }
+
+    /**
+     * Record the new state of a file, false if its content is the same as in the previous run.
+     */
+    public boolean update(String path, long size, long lastModified, String md5) {
+        current.put(path, new ManifestEntry(path, size, lastModified, md5, false));
+
+        ManifestEntry entry = previous.get(path);
+        return entry == null || !md5.equals(entry.getMd5());
+    }
+
+    public void updateArchive(String path, long size, long lastModified) {
+        current.put(path, new ManifestEntry(path, size, lastModified, "", true));
+    }
+
+    public List<String> getDeletedPaths() {
+        List<String> deleted = new ArrayList<>();
+        for(ManifestEntry entry : previous.values()) {
+            if(!entry.isArchive() && !current.containsKey(entry.getPath())) {
+                deleted.add(entry.getPath());
+            }
+        }
+        return deleted;
+    }
+
+    public void save(File file) throws IOException {
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        Schema schema = ReflectData.get().getSchema(ManifestEntry.class);
+        try(DataFileWriter<ManifestEntry> writer = new DataFileWriter<>(new ReflectDatumWriter<>(ManifestEntry.class))
+                .setCodec(CodecFactory.snappyCodec())
+                .create(schema, tmpFile)) {
+            for(ManifestEntry entry : new TreeMap<>(current).values()) {
+                writer.append(entry);
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Manifest " + file + ": " + current.size() + " entries");
+    }
+}
@@ -0,0 +1,99 @@
+package fr.grozeille;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Computes the MD5, the SHA-256 and the size of a content while it is read, so the bytes are only read once.
+ * The hashes are available when the stream has been fully read.
+ */
+public class ContentDigestInputStream extends FilterInputStream {
+
+    private final MessageDigest md5 = DigestUtils.getMd5Digest();
+
+    private final MessageDigest sha256 = DigestUtils.getSha256Digest();
+
+    private long size = 0;
+
+    private String md5Hex = null;
+
+    private String sha256Hex = null;
+
+    public ContentDigestInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if(b >= 0) {
+            md5.update((byte) b);
+            sha256.update((byte) b);
+            size++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if(read > 0) {
+            md5.update(b, off, read);
+            sha256.update(b, off, read);
+            size += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // the skipped bytes must be hashed too
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while(skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if(read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getMd5() {
+        if(md5Hex == null) {
+            md5Hex = Hex.encodeHexString(md5.digest());
+        }
+        return md5Hex;
+    }
+
+    public String getSha256() {
+        if(sha256Hex == null) {
+            sha256Hex = Hex.encodeHexString(sha256.digest());
+        }
+        return sha256Hex;
+    }
+}
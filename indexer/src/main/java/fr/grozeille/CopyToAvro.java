@@ -8,11 +8,10 @@ import org.apache.avro.io.DatumWriter;
 import org.apache.avro.reflect.ReflectData;
 import org.apache.avro.reflect.ReflectDatumWriter;
 import org.apache.commons.cli.*;
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
-import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import fr.grozeille.avro.RawDocument;
 
 import java.io.File;
@@ -22,9 +21,8 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Mathias on 27/12/2015.
@@ -34,6 +32,16 @@ public class CopyToAvro {
 
     private static int cptFile = 0;
 
+    private static ChangeManifest manifest = null;
+
+    private static final AtomicLong readErrors = new AtomicLong();
+
+    private static DataFileWriter<RawDocument> dataFileWriter = null;
+
+    private static BlobStore blobStore = null;
+
+    private static long largeFileThreshold = BlobStore.DEFAULT_THRESHOLD;
+
     private static String[] blacklist = new String[]{
             ".DS_Store", "Thumbs.db"
     };
@@ -53,11 +61,35 @@ public class CopyToAvro {
                 .hasArgs()
                 .withDescription( "Size of avro files." )
                 .create( "s" );
+        Option manifestOption  = OptionBuilder.withArgName( "manifest" )
+                .withLongOpt( "manifest" )
+                .hasArg()
+                .withDescription( "Manifest of the previous run: only the new or modified files are copied, the deleted ones are listed in " + ChangeManifest.DELETED_FILE_NAME + "." )
+                .create( "m" );
+        Option parallelismOption  = OptionBuilder.withArgName( "parallelism" )
+                .withLongOpt( "parallelism" )
+                .hasArg()
+                .withDescription( "Number of threads scanning the folders (default " + ParallelFileWalker.DEFAULT_PARALLELISM + ")." )
+                .create( "p" );
+        Option zipThreadsOption  = OptionBuilder.withArgName( "zip-threads" )
+                .withLongOpt( "zip-threads" )
+                .hasArg()
+                .withDescription( "Number of threads reading the entries of a zip file (default " + ZipScanner.DEFAULT_THREADS + ")." )
+                .create( "z" );
+        Option largeFileThresholdOption  = OptionBuilder.withArgName( "large-file-threshold" )
+                .withLongOpt( "large-file-threshold" )
+                .hasArg()
+                .withDescription( "Files bigger than this size (bytes) are streamed to the " + BlobStore.FOLDER_NAME + " folder instead of being inlined in the avro files (default " + BlobStore.DEFAULT_THRESHOLD + ")." )
+                .create( "l" );
 
         Options options = new Options();
         options.addOption(inputOption);
         options.addOption(outputOption);
         options.addOption(splitSizeOption);
+        options.addOption(manifestOption);
+        options.addOption(parallelismOption);
+        options.addOption(zipThreadsOption);
+        options.addOption(largeFileThresholdOption);
 
         // create the parser
         CommandLineParser parser = new BasicParser();
@@ -96,92 +128,156 @@ public class CopyToAvro {
 
         parentOutputFolder.mkdirs();
 
+        File manifestFile = null;
+        if(line.hasOption("m")) {
+            manifestFile = new File(line.getOptionValue("m"));
+            manifest = ChangeManifest.load(manifestFile);
+        }
 
-        List<String> pathList = new ArrayList<>();
-        pathList.add(new File(inputPath).toString());
-        pathList.addAll(scanSubfolders(inputPath));
-        log.info("Folders to analyse:");
-        pathList.forEach(log::info);
-
-
-        DataFileWriter<RawDocument> dataFileWriter = createAvroDocumentFile(outputPath+"/result"+String.format("%03d", cptFile)+".avro");
+        int parallelism = Integer.parseInt(line.getOptionValue("p", Integer.toString(ParallelFileWalker.DEFAULT_PARALLELISM)));
+        int zipThreads = Integer.parseInt(line.getOptionValue("z", Integer.toString(ZipScanner.DEFAULT_THREADS)));
+        largeFileThreshold = Long.parseLong(line.getOptionValue("l", Long.toString(BlobStore.DEFAULT_THRESHOLD)));
+        blobStore = new BlobStore(parentOutputFolder);
 
-        try {
+        dataFileWriter = createAvroDocumentFile(outputPath+"/result"+String.format("%03d", cptFile)+".avro");
 
+        // list all files to write in avro, the folders are scanned in parallel while the files are copied
+        try (ParallelFileWalker walker = new ParallelFileWalker(Paths.get(inputPath), parallelism);
+             ZipScanner zipScanner = new ZipScanner(zipThreads, largeFileThreshold)) {
 
-            // list all files to write in avro
-            for (String path : pathList) {
+            for (ParallelFileWalker.FileEntry fileEntry : walker) {
+                File child = fileEntry.toFile();
+                long size = fileEntry.getAttributes().size();
+                long lastModified = fileEntry.getAttributes().lastModifiedTime().toMillis();
 
-                File pathFile = new File(path);
-                File[] files = pathFile.listFiles();
-                if(files == null){
+                if(isBlacklisted(child)){
                     continue;
                 }
 
-                for (File child : files) {
-                    if (child.isFile()) {
-
-                        if(isBlacklisted(child)){
-                            continue;
-                        }
-
-                        String extension = FilenameUtils.getExtension(child.getAbsolutePath());
+                String relativePath = relativePath(inputPath, child.getAbsolutePath());
+                if(manifest != null && manifest.keepIfUnchanged(relativePath, size, lastModified)) {
+                    continue;
+                }
 
-                        if ("zip".equalsIgnoreCase(extension)) {
+                if (ZipScanner.isZip(child.getName())) {
 
-                            try (InputStream stream = new FileInputStream(child)) {
-                                ZipArchiveInputStream zis = new ZipArchiveInputStream(stream);
+                    if(manifest != null) {
+                        manifest.updateArchive(relativePath, size, lastModified);
+                    }
 
-                                dataFileWriter = scanZipArchive(dataFileWriter, inputPath, child.getAbsolutePath(), zis, outputPath, splitSize);
-                            }
-                        } else {
-                            RawDocument rawDocument = toDocument(inputPath, child);
-                            dataFileWriter.append(rawDocument);
+                    scanZipArchive(zipScanner, inputPath, child, outputPath, splitSize);
+                } else {
+                    RawDocument rawDocument;
+                    try (InputStream stream = new FileInputStream(child)) {
+                        rawDocument = toDocument(relativePath, stream, lastModified, size > largeFileThreshold);
+                    }
+                    if(manifest != null && !manifest.update(relativePath, size, lastModified, rawDocument.getMd5().toString())) {
+                        continue;
+                    }
+                    append(rawDocument, outputPath, splitSize);
+                }
+            }
 
-                            if(dataFileWriter.sync() >= splitSize){
-                                dataFileWriter.close();
-                                cptFile++;
-                                dataFileWriter = createAvroDocumentFile(outputPath+"/result"+String.format("%03d", cptFile)+".avro");
-                            }
-                        }
+            // the folders not listed may still contain their files
+            for(Path failedPath : walker.getFailedPaths()) {
+                readErrors.incrementAndGet();
+                if(manifest != null) {
+                    String relativePath = relativePath(inputPath, failedPath.toAbsolutePath().toString());
+                    if(relativePath.isEmpty()) {
+                        manifest.keepAll();
+                    }
+                    else {
+                        manifest.keep(relativePath);
                     }
                 }
             }
         }finally {
             dataFileWriter.close();
         }
+
+        if(manifest != null) {
+            List<String> deletedPaths = manifest.getDeletedPaths();
+            log.info(deletedPaths.size() + " deleted files");
+            FileUtils.writeLines(new File(parentOutputFolder, ChangeManifest.DELETED_FILE_NAME), "UTF-8", deletedPaths);
+            manifest.save(manifestFile);
+        }
+        else if(readErrors.get() == 0) {
+            // the indexer can delete the documents not in this output
+            FileUtils.touch(new File(parentOutputFolder, ChangeManifest.COMPLETE_FILE_NAME));
+        }
+        else {
+            log.warn(readErrors.get() + " folders, zip files or entries not read, the output is not marked as complete: the indexer won't delete the documents not in the output");
+        }
     }
 
-    private static DataFileWriter<RawDocument> scanZipArchive(DataFileWriter<RawDocument> dataFileWriter, String rootPath, String parentPath, ZipArchiveInputStream zis, String outputPath, long splitSize) throws IOException {
+    private static void scanZipArchive(ZipScanner zipScanner, String rootPath, File file, String outputPath, long splitSize) {
+        try {
+            zipScanner.scan(file, file.getAbsolutePath(), new ZipScanner.Visitor() {
+                @Override
+                public boolean accept(String entryPath, ZipArchiveEntry entry) {
+                    if(isBlacklisted(new File(entry.getName()))) {
+                        return false;
+                    }
 
+                    String relativePath = relativePath(rootPath, entryPath);
+                    long lastModified = entry.getLastModifiedDate().getTime();
+                    if(manifest != null && manifest.keepIfUnchanged(relativePath, entry.getSize(), lastModified)) {
+                        return false;
+                    }
+                    if(manifest != null && ZipScanner.isZip(entry.getName())) {
+                        manifest.updateArchive(relativePath, entry.getSize(), lastModified);
+                    }
+                    return true;
+                }
 
-        log.debug("Scan zip file: "+parentPath);
-        try {
-            ArchiveEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory()) {
-
-                    String entryPath = parentPath + "/" + entry.getName();
-
-                    if ("zip".equalsIgnoreCase(FilenameUtils.getExtension(entry.getName()))) {
-                        ZipArchiveInputStream subZis = new ZipArchiveInputStream(zis);
-                        dataFileWriter = scanZipArchive(dataFileWriter, rootPath, entryPath, subZis, outputPath, splitSize);
-                    } else {
-                        RawDocument rawDocument = toDocument(rootPath, entryPath, zis);
-                        dataFileWriter.append(rawDocument);
-                        if (dataFileWriter.sync() >= splitSize) {
-                            dataFileWriter.close();
-                            cptFile++;
-                            dataFileWriter = createAvroDocumentFile(outputPath + "/result" + String.format("%03d", cptFile) + ".avro");
+                @Override
+                public void visit(ZipScanner.ZipDocument document) throws IOException {
+                    String relativePath = relativePath(rootPath, document.getPath());
+                    long lastModified = document.getEntry().getLastModifiedDate().getTime();
+
+                    RawDocument rawDocument;
+                    if(document.isInMemory()) {
+                        rawDocument = toDocument(relativePath, document.getContent(), lastModified);
+                    }
+                    else {
+                        try (InputStream stream = document.openStream()) {
+                            rawDocument = toDocument(relativePath, stream, lastModified, true);
                         }
                     }
+
+                    if(manifest != null && !manifest.update(relativePath, document.getEntry().getSize(), lastModified, rawDocument.getMd5().toString())) {
+                        return;
+                    }
+                    append(rawDocument, outputPath, splitSize);
                 }
-            }
+
+                @Override
+                public void failed(String entryPath, Exception ex) {
+                    log.error("Unable to read zip entry " + entryPath, ex);
+                    readErrors.incrementAndGet();
+                    if(manifest != null) {
+                        // don't report the entries that couldn't be read as deleted
+                        manifest.keep(relativePath(rootPath, entryPath));
+                    }
+                }
+            });
         } catch (Exception ex) {
-            log.error("Unable to read zip file " + parentPath, ex);
+            log.error("Unable to read zip file " + file.getAbsolutePath(), ex);
+            readErrors.incrementAndGet();
+            if(manifest != null) {
+                manifest.keep(relativePath(rootPath, file.getAbsolutePath()));
+            }
         }
+    }
+
+    private static void append(RawDocument rawDocument, String outputPath, long splitSize) throws IOException {
+        dataFileWriter.append(rawDocument);
 
-        return dataFileWriter;
+        if(dataFileWriter.sync() >= splitSize){
+            dataFileWriter.close();
+            cptFile++;
+            dataFileWriter = createAvroDocumentFile(outputPath+"/result"+String.format("%03d", cptFile)+".avro");
+        }
     }
 
     private static boolean isBlacklisted(File file){
@@ -203,34 +299,46 @@ public class CopyToAvro {
                 .create(schema, file);
     }
 
-    private static RawDocument toDocument(String rootPath, String path, InputStream stream) throws IOException {
+    /**
+     * Read a document and compute its hashes in a single pass, the large ones are streamed to the blob store.
+     */
+    private static RawDocument toDocument(String relativePath, InputStream stream, long lastModified, boolean large) throws IOException {
+        ContentDigestInputStream digestStream = new ContentDigestInputStream(stream);
+
         RawDocument doc = new RawDocument();
-        Path relativePath = Paths.get(rootPath).relativize(Paths.get(path));
-        doc.setPath(relativePath.toString());
-        doc.setLang("");
-        ByteArrayOutputStream ous = new ByteArrayOutputStream();
-        IOUtils.copy(stream, ous);
-        doc.setBody(ByteBuffer.wrap(ous.toByteArray()));
+        doc.setPath(relativePath);
+        if(large) {
+            doc.setBody(ByteBuffer.allocate(0));
+            doc.setBlob(blobStore.put(digestStream));
+        }
+        else {
+            doc.setBody(ByteBuffer.wrap(IOUtils.toByteArray(digestStream)));
+        }
+        doc.setMd5(digestStream.getMd5());
+        doc.setSha256(digestStream.getSha256());
+        doc.setSize(digestStream.getSize());
+        doc.setLastModified(lastModified);
 
         return doc;
     }
 
-    private static RawDocument toDocument(String rootPath, File file) throws IOException {
-        try(InputStream stream = new FileInputStream(file)) {
-            return toDocument(rootPath, file.getAbsolutePath(), stream);
-        }
+    /**
+     * Zip entry already read by the ZipScanner.
+     */
+    private static RawDocument toDocument(String relativePath, byte[] content, long lastModified) {
+        RawDocument doc = new RawDocument();
+        doc.setPath(relativePath);
+        doc.setBody(ByteBuffer.wrap(content));
+        doc.setMd5(DigestUtils.md5Hex(content));
+        doc.setSha256(DigestUtils.sha256Hex(content));
+        doc.setSize((long) content.length);
+        doc.setLastModified(lastModified);
+
+        return doc;
     }
 
-    private static Collection<? extends String> scanSubfolders(String inputPath) {
-        File parent = new File(inputPath);
-        List<String> folders = new ArrayList<>();
-        String[] directories = parent.list((current, name) -> new File(current, name).isDirectory());
-        if(directories != null) {
-            for (String d : directories) {
-                folders.add(new File(parent, d).toString());
-                folders.addAll(scanSubfolders(new File(parent, d).getAbsolutePath()));
-            }
-        }
-        return folders;
+    private static String relativePath(String rootPath, String path) {
+        Path relativePath = Paths.get(rootPath).relativize(Paths.get(path));
+        return relativePath.toString();
     }
 }
@@ -0,0 +1,100 @@
+package fr.grozeille;
+
+import fr.grozeille.avro.FailedDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Avro file of the documents rejected by Solr (FailedDocument records), created on the first failure.
+ * The values of the fields are kept as strings, the file can be indexed again by DocumentIndexer like a ParsedDocument file.
+ */
+@Slf4j
+public class DeadLetterFile implements Closeable {
+
+    public static final String DEFAULT_FOLDER = "dead-letter";
+
+    private final File file;
+
+    private DataFileWriter<FailedDocument> dataFileWriter = null;
+
+    private long count = 0;
+
+    public DeadLetterFile(File folder) {
+        this.file = new File(folder, "failed-" + System.currentTimeMillis() + ".avro");
+    }
+
+    public synchronized void write(SolrInputDocument document, Exception error) throws IOException {
+        if(dataFileWriter == null) {
+            file.getParentFile().mkdirs();
+            dataFileWriter = new DataFileWriter<>(new SpecificDatumWriter<>(FailedDocument.class));
+            dataFileWriter.create(FailedDocument.getClassSchema(), file);
+        }
+
+        Map<CharSequence, List<CharSequence>> fields = new HashMap<>();
+        for(SolrInputField field : document) {
+            List<CharSequence> values = new ArrayList<>();
+            for(Object value : field) {
+                values.add(String.valueOf(value));
+            }
+            fields.put(field.getName(), values);
+        }
+
+        Object id = document.getFieldValue("id");
+        dataFileWriter.append(new FailedDocument(id != null ? id.toString() : "", fields, String.valueOf(error), System.currentTimeMillis()));
+        // the failed documents must not be lost if the run is killed later
+        dataFileWriter.flush();
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public static boolean isDeadLetterFile(File file) throws IOException {
+        try(DataFileReader<GenericRecord> reader = new DataFileReader<>(file, new GenericDatumReader<>())) {
+            return FailedDocument.getClassSchema().getFullName().equals(reader.getSchema().getFullName());
+        }
+    }
+
+    public static boolean isFailedDocument(GenericRecord record) {
+        return FailedDocument.getClassSchema().getFullName().equals(record.getSchema().getFullName());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static SolrInputDocument toSolrDocument(GenericRecord failedDocument) {
+        SolrInputDocument solrDocument = new SolrInputDocument();
+        Map<CharSequence, List<CharSequence>> fields = (Map<CharSequence, List<CharSequence>>) failedDocument.get("fields");
+        for(Map.Entry<CharSequence, List<CharSequence>> field : fields.entrySet()) {
+            for(CharSequence value : field.getValue()) {
+                solrDocument.addField(field.getKey().toString(), value.toString());
+            }
+        }
+        return solrDocument;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(dataFileWriter != null) {
+            dataFileWriter.close();
+            log.warn(count + " documents not indexed, written to " + file.getAbsolutePath());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package fr.grozeille;
 
 import lombok.extern.slf4j.Slf4j;
+import com.google.common.cache.CacheStats;
 import org.apache.avro.Schema;
 import org.apache.avro.file.CodecFactory;
 import org.apache.avro.file.DataFileReader;
@@ -12,37 +13,63 @@ import org.apache.avro.reflect.ReflectData;
 import org.apache.avro.reflect.ReflectDatumWriter;
 import org.apache.commons.cli.*;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentInformation;
-import org.apache.poi.hpsf.PropertySetFactory;
-import org.apache.poi.hpsf.SummaryInformation;
-import org.apache.poi.ooxml.POIXMLProperties;
-import org.apache.poi.xslf.usermodel.XMLSlideShow;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.tika.Tika;
-import org.apache.tika.langdetect.OptimaizeLangDetector;
-import org.apache.tika.language.detect.LanguageDetector;
+import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.language.detect.LanguageResult;
-import org.apache.tika.metadata.Metadata;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.sax.*;
 import fr.grozeille.avro.ParsedDocument;
 import fr.grozeille.avro.RawDocument;
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.sax.SAXTransformerFactory;
-import javax.xml.transform.sax.TransformerHandler;
-import javax.xml.transform.stream.StreamResult;
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Slf4j
 public class DocumentExtractor {
 
+    private static final List<String> supportedLanguages = Arrays.asList(
+            "ar",
+            "bg",
+            "ca",
+            "cjk",
+            "cz",
+            "da",
+            "de",
+            "el",
+            "en",
+            "es",
+            "eu",
+            "fa",
+            "fi",
+            "fr",
+            "ga",
+            "gl",
+            "hi",
+            "hu",
+            "hy",
+            "id",
+            "it",
+            "ja",
+            "ko",
+            "lv",
+            "nl",
+            "no",
+            "pt",
+            "rev",
+            "ro",
+            "ru",
+            "sv",
+            "th",
+            "tr"
+    );
+
+    private static BlobStore blobStore = null;
+
+    private static ParseCache parseCache = null;
+
     public static void main(String[] args) throws Exception {
 
         Option inputOption  = OptionBuilder.withArgName( "input" )
@@ -55,10 +82,39 @@ public class DocumentExtractor {
                 .hasArgs()
                 .withDescription( "Output path for avro files." )
                 .create( "o" );
+        Option metadataFallbackOption  = OptionBuilder.withArgName( "metadata-fallback" )
+                .withDescription( "Read the PDF/DOC/DOCX/PPTX metadata again with PDFBox/POI when Tika misses some fields." )
+                .create( "m" );
+        Option threadsOption  = OptionBuilder.withArgName( "threads" )
+                .withLongOpt( "threads" )
+                .hasArg()
+                .withDescription( "Number of threads parsing the documents (default 1)." )
+                .create( "t" );
+        Option queueSizeOption  = OptionBuilder.withArgName( "queue-size" )
+                .withLongOpt( "queue-size" )
+                .hasArg()
+                .withDescription( "Maximum number of documents waiting to be parsed or written (default 4 per thread)." )
+                .create( "q" );
+        Option splitSizeOption  = OptionBuilder.withArgName( "split-size" )
+                .withLongOpt( "split-size" )
+                .hasArg()
+                .withDescription( "Split the input files in ranges of this size (bytes), the ranges are read by the threads in parallel and written in part files." )
+                .create( "s" );
+
+        Option cacheSizeOption  = OptionBuilder.withArgName( "cache-size" )
+                .withLongOpt( "cache-size" )
+                .hasArg()
+                .withDescription( "Maximum size (chars) of the bodies kept to skip the parsing of the copies of a document, 0 to disable (default " + ParseCache.DEFAULT_MAX_SIZE + ")." )
+                .create( "c" );
 
         Options options = new Options();
         options.addOption(inputOption);
         options.addOption(outputOption);
+        options.addOption(metadataFallbackOption);
+        options.addOption(threadsOption);
+        options.addOption(queueSizeOption);
+        options.addOption(splitSizeOption);
+        options.addOption(cacheSizeOption);
 
         // create the parser
         CommandLineParser parser = new BasicParser();
@@ -101,320 +157,284 @@ public class DocumentExtractor {
             return;
         }
 
-        //final DatumReader<Document> reader = new ReflectDatumReader<>(Document.class);
-        final GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>();
-
-
-        List<String> supportedLanguages = Arrays.asList(
-                "ar",
-                "bg",
-                "ca",
-                "cjk",
-                "cz",
-                "da",
-                "de",
-                "el",
-                "en",
-                "es",
-                "eu",
-                "fa",
-                "fi",
-                "fr",
-                "ga",
-                "gl",
-                "hi",
-                "hu",
-                "hy",
-                "id",
-                "it",
-                "ja",
-                "ko",
-                "lv",
-                "nl",
-                "no",
-                "pt",
-                "rev",
-                "ro",
-                "ru",
-                "sv",
-                "th",
-                "tr"
-        );
-        LanguageDetector detector = new OptimaizeLangDetector().loadModels();
-        //Translate translate = TranslateOptions.getDefaultInstance().getService();
+        // documents too big to be inlined in the avro files by CopyToAvro
+        blobStore = new BlobStore(pathFile);
 
-        for(File inputFile : files) {
-            if(inputFile.isDirectory()) {
-                continue;
+        // the deleted files reported by an incremental CopyToAvro, or the mark of a complete copy, are passed to the indexer
+        for(String markerName : new String[]{ChangeManifest.DELETED_FILE_NAME, ChangeManifest.COMPLETE_FILE_NAME}) {
+            File markerFile = new File(pathFile, markerName);
+            if(markerFile.exists()) {
+                FileUtils.copyFileToDirectory(markerFile, parentOutputFolder);
             }
+        }
 
-            File outputFile = new File(parentOutputFolder, inputFile.getName());
-
-            try(DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(inputFile, reader)) {
-                try(DataFileWriter<ParsedDocument> dataFileWriter = createAvroDocumentFile(outputFile)) {
-
-                    for(GenericRecord inputDocument : dataFileReader) {
-
-                        ParsedDocument outputDocument = new ParsedDocument();
-                        String path = inputDocument.get("path").toString();
-
-                        outputDocument.setPath(path);
-                        File inputDocumentFile = new File(path);
-                        outputDocument.setName(inputDocumentFile.getName());
-                        outputDocument.setExtension(FilenameUtils.getExtension(inputDocumentFile.getName()));
+        //final DatumReader<Document> reader = new ReflectDatumReader<>(Document.class);
+        final GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>();
 
-                        // parse the body
-                        ByteBuffer byteBody = (ByteBuffer) inputDocument.get("body");
 
-                        String md5 = DigestUtils.md5Hex(byteBody.array()).toUpperCase();
-                        outputDocument.setMd5(md5);
+        LanguageDetectionService detector = new LanguageDetectionService(Collections.emptyList(), LanguageDetectionService.DEFAULT_MAX_CHARS);
+        DocumentParser documentParser = new DocumentParser(line.hasOption("m"));
+        long cacheSize = Long.parseLong(line.getOptionValue("c", Long.toString(ParseCache.DEFAULT_MAX_SIZE)));
+        if(cacheSize > 0) {
+            parseCache = new ParseCache(cacheSize);
+        }
+        //Translate translate = TranslateOptions.getDefaultInstance().getService();
 
-                        ExtractDocument extractDocument = parseBody(path, byteBody.array());
-                        String body = extractDocument.getHtmlBody();
-                        outputDocument.setBody(body);
-                        //outputDocument.setBodyTranslated("");
-                        outputDocument.setLang("");
+        int threads = Integer.parseInt(line.getOptionValue("t", "1"));
 
-                        // detect the lang
-                        // translate.detect(body).
-                        LanguageResult result = detector.detect(body);
-                        if(result.isReasonablyCertain()) {
-                            outputDocument.setLang(result.getLanguage());
+        if(line.hasOption("s")) {
+            // the files are split in ranges, each range is parsed by one thread and written in its own part file
+            long splitSize = Long.parseLong(line.getOptionValue("s"));
+            List<AvroSplit> splits = new ArrayList<>();
+            for(File inputFile : files) {
+                if(isAvroFile(inputFile)) {
+                    splits.addAll(AvroSplit.split(inputFile, splitSize));
+                }
+            }
+            log.info(splits.size() + " splits to extract");
 
-                            if(supportedLanguages.contains(result.getLanguage())) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> results = new ArrayList<>();
+                for(AvroSplit split : splits) {
+                    results.add(executor.submit(() -> {
+                        extractSplit(split, new File(parentOutputFolder, split.getOutputName()), documentParser, detector);
+                        return null;
+                    }));
+                }
+                for(Future<?> result : results) {
+                    result.get();
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+            logCacheStats();
+            return;
+        }
 
-                                /*AttributeFactory factory = AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY;
+        // more than one thread: the records are parsed by a pool of workers, at most queueSize records are in memory
+        int queueSize = Integer.parseInt(line.getOptionValue("q", Integer.toString(threads * 4)));
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
 
-                                StandardTokenizer tokenizer = new StandardTokenizer(factory);
-                                tokenizer.setReader(new StringReader(body));
-                                tokenizer.reset();
+        try {
+            for(File inputFile : files) {
+                if(!isAvroFile(inputFile)) {
+                    continue;
+                }
 
-                                List<String> tokenList = new ArrayList<>();
-                                CharTermAttribute attr = tokenizer.addAttribute(CharTermAttribute.class);
-                                while (tokenizer.incrementToken()) {
-                                    String term = attr.toString();
+                File outputFile = new File(parentOutputFolder, inputFile.getName());
 
-                                    tokenList.add(term);
-                                }
-                                log.info("Words: "+tokenList.size());*/
-
-                                /*
-                                Document doc = Jsoup.parse(body, "UTF-8");
-                                for(Element divPage : doc.select("div[class='page']")) {
-                                    String html = divPage.html();
-
-                                    try {
-                                        Translation translation =
-                                                translate.translate(
-                                                        html,
-                                                        Translate.TranslateOption.sourceLanguage(result.getLanguage()),
-                                                        Translate.TranslateOption.targetLanguage("en"),
-                                                        // Use "base" for standard edition, "nmt" for the premium model.
-                                                        Translate.TranslateOption.model("base"),
-                                                        Translate.TranslateOption.format("html"));
-
-                                        String translatedHtml = translation.getTranslatedText();
-                                        divPage.replaceWith(new Element(Tag.valueOf("div"), "").addClass("page").html(translatedHtml));
-                                    }
-                                    catch(TranslateException te) {
-                                        if(te.getReason().equals("userRateLimitExceeded")) {
-                                            log.warn(te.getMessage() + ", waiting 100s for next quota");
-                                            Thread.sleep(100*1000);
-
-                                            Translation translation =
-                                                    translate.translate(
-                                                            html,
-                                                            Translate.TranslateOption.sourceLanguage(result.getLanguage()),
-                                                            Translate.TranslateOption.targetLanguage("en"),
-                                                            // Use "base" for standard edition, "nmt" for the premium model.
-                                                            Translate.TranslateOption.model("base"),
-                                                            Translate.TranslateOption.format("html"));
-
-                                            String translatedHtml = translation.getTranslatedText();
-                                            divPage.replaceWith(new Element(Tag.valueOf("div"), "").addClass("page").html(translatedHtml));
-                                        }
-                                        else {
-                                            throw te;
-                                        }
-                                    }
-                                }
+                try(DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(inputFile, reader)) {
+                    try(DataFileWriter<ParsedDocument> dataFileWriter = createAvroDocumentFile(outputFile)) {
 
-                                String body_en = doc.toString();
-                                outputDocument.setBodyTranslated(body_en);*/
+                        if(executor == null) {
+                            for(GenericRecord inputDocument : dataFileReader) {
+                                append(dataFileWriter, extractOrSkip(inputDocument, documentParser, detector));
                             }
                         }
                         else {
-                            log.warn("Unable to detect language " + path);
-                        }
+                            // the records are parsed by the workers, but written by this thread in the input order
+                            Deque<Future<ParsedDocument>> pending = new ArrayDeque<>();
+                            for(GenericRecord inputDocument : dataFileReader) {
+                                pending.add(executor.submit(() -> extractOrSkip(inputDocument, documentParser, detector)));
 
-                        try {
-                            dataFileWriter.append(outputDocument);
-                        }
-                        catch(Exception ex) {
-                            log.info(outputDocument.getName().toString());
-                            log.error(ex.getMessage(), ex);
+                                if(pending.size() >= queueSize) {
+                                    append(dataFileWriter, pending.poll().get());
+                                }
+                            }
+                            while(!pending.isEmpty()) {
+                                append(dataFileWriter, pending.poll().get());
+                            }
                         }
                     }
-
                 }
             }
         }
+        finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        logCacheStats();
     }
 
-    private static Tika tika;
-    private static Metadata metadata;
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-
-    private static ExtractDocument parseBody(String path, byte[] byteBody) throws IOException {
-        ExtractDocument result = new ExtractDocument();
-
-        if(tika == null) {
-            tika = new Tika();
-            metadata = new Metadata();
-            metadata.add(Metadata.CONTENT_ENCODING, "UTF-8");
+    private static void logCacheStats() {
+        if(parseCache != null) {
+            CacheStats stats = parseCache.getStats();
+            log.info("Parse cache: " + stats.hitCount() + " hits, " + stats.missCount() + " misses, " + stats.evictionCount() + " evictions");
         }
+    }
 
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(byteBody);
-
-        log.info("Parsing file: "+path);
+    private static void extractSplit(AvroSplit split, File outputFile, DocumentParser documentParser, LanguageDetectionService detector) throws IOException {
+        log.info("Extract " + split.getFile().getName() + " [" + split.getStart() + ", " + split.getEnd() + "[ to " + outputFile.getName());
 
-        String extension = FilenameUtils.getExtension(path);
-        //StringBuilder outputText = new StringBuilder();
+        try(DataFileReader<GenericRecord> dataFileReader = split.open(new GenericDatumReader<>())) {
+            try(DataFileWriter<ParsedDocument> dataFileWriter = createAvroDocumentFile(outputFile)) {
+                while(dataFileReader.hasNext() && !dataFileReader.pastSync(split.getEnd())) {
+                    append(dataFileWriter, extract(dataFileReader.next(), documentParser, detector));
+                }
+            }
+        }
+    }
 
-        // not very good... but need to read it multiple times and tika is closing the stream at the end of the parsing...
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        IOUtils.copy(inputStream, out);
-        IOUtils.closeQuietly(out);
-        byte[] bytes = out.toByteArray();
+    /**
+     * The document is skipped (null) when its parsing fails, so the other documents of the file are still written.
+     */
+    private static ParsedDocument extractOrSkip(GenericRecord inputDocument, DocumentParser documentParser, LanguageDetectionService detector) {
+        try {
+            return extract(inputDocument, documentParser, detector);
+        }
+        catch(RuntimeException ex) {
+            log.error("Unable to extract " + inputDocument.get("path") + ", skipped", ex);
+            return null;
+        }
+    }
 
-        // add path to text
-        //outputText.append(path.replace('.', ' ').replace('/', ' ').replace('\\', ' ').replace('_', ' ')).append("\n");
+    private static ParsedDocument extract(GenericRecord inputDocument, DocumentParser documentParser, LanguageDetectionService detector) {
 
+        ParsedDocument outputDocument = new ParsedDocument();
+        String path = inputDocument.get("path").toString();
 
+        outputDocument.setPath(path);
+        File inputDocumentFile = new File(path);
+        outputDocument.setName(inputDocumentFile.getName());
+        outputDocument.setExtension(FilenameUtils.getExtension(inputDocumentFile.getName()));
 
-        AutoDetectParser parser = new AutoDetectParser();
-        Metadata metadata = new Metadata();
+        // md5 computed by CopyToAvro while copying the file, only computed here for the files written by the previous versions
+        // the key of a large document in the blob store is the md5 of its content
+        Object blob = inputDocument.get("blob");
+        Object md5 = blob != null ? blob : inputDocument.get("md5");
+        if(md5 == null || md5.toString().isEmpty()) {
+            md5 = DigestUtils.md5Hex(((ByteBuffer) inputDocument.get("body")).array());
+        }
+        String md5Hex = md5.toString().toUpperCase();
+        outputDocument.setMd5(md5Hex);
+
+        // the copies of a document are only parsed once
+        ParseCache.Entry cached = parseCache != null ? parseCache.get(md5Hex) : null;
+        if(cached != null) {
+            outputDocument.setBody(cached.getHtmlBody());
+            outputDocument.setLang(cached.getLang());
+            return outputDocument;
+        }
 
-        // parse document
-        try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-            try {
-                /*ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ToHTMLContentHandler toHtmlContentHandler = new ToHTMLContentHandler(bos, "UTF-8");
-                WriteOutContentHandler handler = new WriteOutContentHandler(toHtmlContentHandler, (int) 4000000);
-                ContentHandler bodyHandler = new BodyContentHandler(handler);
-
-                parser.parse(stream, bodyHandler, metadata);
-                String text = bos.toString("UTF-8");*/
-
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                SAXTransformerFactory factory = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-                TransformerHandler handler = factory.newTransformerHandler();
-                handler.getTransformer().setOutputProperty(OutputKeys.METHOD, "html");
-                handler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
-                handler.getTransformer().setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-                handler.setResult(new StreamResult(bos));
-                ExpandedTitleContentHandler handler1 = new ExpandedTitleContentHandler(handler);
-
-                parser.parse(stream, handler1, new Metadata());
-                String htmlText = new String(bos.toByteArray(), "UTF-8");
-
-                result.setHtmlBody(htmlText);
-
-                //stream.reset();
-                //String text = tika.parseToString(stream, metadata);
-                //String text = tika.parseToString(stream);
-                //outputText.append(text).append("\n");
-            }catch (Exception ex){
-                log.error("Unable to parse file: "+path, ex);
-                result.setHtmlBody("");
+        // parse the body
+        ExtractDocument extractDocument;
+        if(blob != null) {
+            // large document streamed from the blob store
+            try(InputStream stream = TikaInputStream.get(blobStore.get(blob.toString()).toPath())) {
+                extractDocument = documentParser.parseBody(path, stream);
+            }
+            catch(IOException ex) {
+                log.error("Unable to read blob " + blob + " of " + path, ex);
+                extractDocument = new ExtractDocument();
+                extractDocument.setHtmlBody("");
             }
         }
+        else {
+            ByteBuffer byteBody = (ByteBuffer) inputDocument.get("body");
+            extractDocument = documentParser.parseBody(path, byteBody.array());
+        }
+        String body = extractDocument.getHtmlBody();
+        outputDocument.setBody(body);
+        //outputDocument.setBodyTranslated("");
+        outputDocument.setLang("");
 
-        if("pdf".equalsIgnoreCase(extension)){
-
-            try {
+        // detect the lang
+        // translate.detect(body).
+        LanguageResult result = detector.detect(body);
+        if(result.isReasonablyCertain()) {
+            outputDocument.setLang(result.getLanguage());
 
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
+            if(supportedLanguages.contains(result.getLanguage())) {
 
-                    // load all pages of the PDF and search for images
-                    try (PDDocument document = PDDocument.load(stream)) {
+                /*AttributeFactory factory = AttributeFactory.DEFAULT_ATTRIBUTE_FACTORY;
 
-                        PDDocumentInformation info = document.getDocumentInformation();
+                StandardTokenizer tokenizer = new StandardTokenizer(factory);
+                tokenizer.setReader(new StringReader(body));
+                tokenizer.reset();
 
-                        result.getMetadata().put("title", info.getTitle());
-                        result.getMetadata().put("author", info.getAuthor());
-                        result.getMetadata().put("subject", info.getSubject());
-                        result.getMetadata().put("keywords", info.getKeywords());
-                        result.getMetadata().put("creator", info.getCreator());
-                        result.getMetadata().put("producer", info.getProducer());
-                        result.getMetadata().put("creationDate", info.getCreationDate() != null ? dateFormat.format(info.getCreationDate().getTime()) : "");
-                        result.getMetadata().put("modificationDate", info.getModificationDate() != null ? dateFormat.format(info.getModificationDate().getTime()) : "");
+                List<String> tokenList = new ArrayList<>();
+                CharTermAttribute attr = tokenizer.addAttribute(CharTermAttribute.class);
+                while (tokenizer.incrementToken()) {
+                    String term = attr.toString();
 
-                        if(document.isEncrypted()) {
-                            log.warn("Unable to decrypt PDF: " + path);
+                    tokenList.add(term);
+                }
+                log.info("Words: "+tokenList.size());*/
+
+                /*
+                Document doc = Jsoup.parse(body, "UTF-8");
+                for(Element divPage : doc.select("div[class='page']")) {
+                    String html = divPage.html();
+
+                    try {
+                        Translation translation =
+                                translate.translate(
+                                        html,
+                                        Translate.TranslateOption.sourceLanguage(result.getLanguage()),
+                                        Translate.TranslateOption.targetLanguage("en"),
+                                        // Use "base" for standard edition, "nmt" for the premium model.
+                                        Translate.TranslateOption.model("base"),
+                                        Translate.TranslateOption.format("html"));
+
+                        String translatedHtml = translation.getTranslatedText();
+                        divPage.replaceWith(new Element(Tag.valueOf("div"), "").addClass("page").html(translatedHtml));
+                    }
+                    catch(TranslateException te) {
+                        if(te.getReason().equals("userRateLimitExceeded")) {
+                            log.warn(te.getMessage() + ", waiting 100s for next quota");
+                            Thread.sleep(100*1000);
+
+                            Translation translation =
+                                    translate.translate(
+                                            html,
+                                            Translate.TranslateOption.sourceLanguage(result.getLanguage()),
+                                            Translate.TranslateOption.targetLanguage("en"),
+                                            // Use "base" for standard edition, "nmt" for the premium model.
+                                            Translate.TranslateOption.model("base"),
+                                            Translate.TranslateOption.format("html"));
+
+                            String translatedHtml = translation.getTranslatedText();
+                            divPage.replaceWith(new Element(Tag.valueOf("div"), "").addClass("page").html(translatedHtml));
+                        }
+                        else {
+                            throw te;
                         }
                     }
                 }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse PDF document", ex);
+
+                String body_en = doc.toString();
+                outputDocument.setBodyTranslated(body_en);*/
             }
         }
-        else if("docx".equalsIgnoreCase(extension)){
-            try {
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-
-                    try (XWPFDocument document = new XWPFDocument(stream)) {
-                        POIXMLProperties.CoreProperties props = document.getProperties().getCoreProperties();
-                        result.getMetadata().put("title", props.getTitle());
-                        result.getMetadata().put("description", props.getDescription());
-                        result.getMetadata().put("creator", props.getCreator());
-                        result.getMetadata().put("keywords", props.getKeywords());
-                        result.getMetadata().put("subject", props.getSubject());
-                    }
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse DOCX document", ex);
-            }
+        else {
+            log.warn("Unable to detect language " + path);
         }
-        else if("doc".equalsIgnoreCase(extension)){
-            try {
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-                    SummaryInformation si = (SummaryInformation) PropertySetFactory.create(stream);
-
-                    result.getMetadata().put("title", si.getTitle());
-                    result.getMetadata().put("lastAuthor", si.getLastAuthor());
-                    result.getMetadata().put("author", si.getAuthor());
-                    result.getMetadata().put("keywords", si.getKeywords());
-                    result.getMetadata().put("comments", si.getComments());
-                    result.getMetadata().put("subject", si.getSubject());
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse DOC document", ex);
-            }
+
+        if(parseCache != null) {
+            parseCache.put(md5Hex, new ParseCache.Entry(body, outputDocument.getLang().toString()));
         }
-        else if("pptx".equalsIgnoreCase(extension)){
-            try {
-                try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-
-                    try (XMLSlideShow document = new XMLSlideShow(stream)) {
-                        POIXMLProperties.CoreProperties props = document.getProperties().getCoreProperties();
-                        result.getMetadata().put("title", props.getTitle());
-                        result.getMetadata().put("description", props.getDescription());
-                        result.getMetadata().put("creator", props.getCreator());
-                        result.getMetadata().put("keywords", props.getKeywords());
-                        result.getMetadata().put("subject", props.getSubject());
-                    }
-                }
-            }
-            catch (Exception ex){
-                log.error("Unable to parse DOCX document", ex);
-            }
+
+        return outputDocument;
+    }
+
+    private static void append(DataFileWriter<ParsedDocument> dataFileWriter, ParsedDocument outputDocument) {
+        if(outputDocument == null) {
+            return;
+        }
+        try {
+            dataFileWriter.append(outputDocument);
         }
+        catch(Exception ex) {
+            log.info(outputDocument.getName().toString());
+            log.error(ex.getMessage(), ex);
+        }
+    }
 
-        return result;
+    private static boolean isAvroFile(File file) {
+        return file.isFile() && "avro".equalsIgnoreCase(FilenameUtils.getExtension(file.getName()));
     }
 
     private static DataFileWriter<ParsedDocument> createAvroDocumentFile(File outputFile) throws IOException {
@@ -8,8 +8,9 @@ import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.commons.cli.*;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
-import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import fr.grozeille.avro.ParsedDocument;
 import org.jsoup.Jsoup;
@@ -17,8 +18,14 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class DocumentIndexer {
@@ -32,9 +39,80 @@ public class DocumentIndexer {
                 .hasArgs()
                 .withDescription( "Input path to analyse." )
                 .create( "i" );
+        Option threadsOption  = OptionBuilder.withArgName( "threads" )
+                .withLongOpt( "threads" )
+                .hasArg()
+                .withDescription( "Number of threads reading the avro files (default 1)." )
+                .create( "t" );
+        Option splitSizeOption  = OptionBuilder.withArgName( "split-size" )
+                .withLongOpt( "split-size" )
+                .hasArg()
+                .withDescription( "Split the input files in ranges of this size (bytes), read by the threads in parallel." )
+                .create( "s" );
+        Option solrUrlOption  = OptionBuilder.withArgName( "solr-url" )
+                .withLongOpt( "solr-url" )
+                .hasArg()
+                .withDescription( "Solr core (default http://beebox02:8983/solr/mycore)." )
+                .create( "u" );
+        Option batchSizeOption  = OptionBuilder.withArgName( "batch-size" )
+                .withLongOpt( "batch-size" )
+                .hasArg()
+                .withDescription( "Initial number of documents sent to Solr per request, adapted to the latency of Solr (default " + SolrBulkLoader.DEFAULT_BATCH_SIZE + ")." )
+                .create( "b" );
+        Option batchBytesOption  = OptionBuilder.withArgName( "batch-bytes" )
+                .withLongOpt( "batch-bytes" )
+                .hasArg()
+                .withDescription( "Max size of a request sent to Solr, in bytes (default " + AdaptiveBatchSize.DEFAULT_MAX_BYTES + ")." )
+                .create();
+        Option targetLatencyOption  = OptionBuilder.withArgName( "target-latency" )
+                .withLongOpt( "target-latency" )
+                .hasArg()
+                .withDescription( "The batches are smaller when a request to Solr takes longer than this (ms, default " + AdaptiveBatchSize.DEFAULT_TARGET_LATENCY + ")." )
+                .create();
+        Option solrThreadsOption  = OptionBuilder.withArgName( "solr-threads" )
+                .withLongOpt( "solr-threads" )
+                .hasArg()
+                .withDescription( "Number of batches sent to Solr in parallel (default " + SolrBulkLoader.DEFAULT_THREADS + ")." )
+                .create( "n" );
+        Option commitWithinOption  = OptionBuilder.withArgName( "commit-within" )
+                .withLongOpt( "commit-within" )
+                .hasArg()
+                .withDescription( "Max delay (ms) before the documents are visible, -1 to let Solr's autoCommit decide (default " + SolrBulkLoader.DEFAULT_COMMIT_WITHIN + ")." )
+                .create( "w" );
+        Option retriesOption  = OptionBuilder.withArgName( "retries" )
+                .withLongOpt( "retries" )
+                .hasArg()
+                .withDescription( "Number of retries of a batch when Solr can't be reached or fails (default " + BisectingRetry.DEFAULT_RETRIES + "), with an exponential backoff." )
+                .create( "r" );
+        Option deadLetterOption  = OptionBuilder.withArgName( "dead-letter" )
+                .withLongOpt( "dead-letter" )
+                .hasArg()
+                .withDescription( "Folder of the avro files of the documents rejected by Solr, to be indexed again with -i (default " + DeadLetterFile.DEFAULT_FOLDER + ")." )
+                .create( "d" );
+        Option incrementalOption  = OptionBuilder.withArgName( "incremental" )
+                .withLongOpt( "incremental" )
+                .withDescription( "Only send the new and modified documents (by id and md5 compared to the documents already in Solr), and delete the documents listed in " + ChangeManifest.DELETED_FILE_NAME + " or, when the input is a complete copy (" + ChangeManifest.COMPLETE_FILE_NAME + "), the documents not in the input. Not for a dead letter file." )
+                .create();
+        Option commitOption  = OptionBuilder.withArgName( "commit" )
+                .withLongOpt( "commit" )
+                .hasArg()
+                .withDescription( "Commit at the end: hard, soft or none (default hard)." )
+                .create( "c" );
 
         Options options = new Options();
         options.addOption(inputOption);
+        options.addOption(threadsOption);
+        options.addOption(splitSizeOption);
+        options.addOption(solrUrlOption);
+        options.addOption(batchSizeOption);
+        options.addOption(batchBytesOption);
+        options.addOption(targetLatencyOption);
+        options.addOption(solrThreadsOption);
+        options.addOption(commitWithinOption);
+        options.addOption(retriesOption);
+        options.addOption(deadLetterOption);
+        options.addOption(incrementalOption);
+        options.addOption(commitOption);
 
         // create the parser
         CommandLineParser parser = new BasicParser();
@@ -56,11 +134,6 @@ public class DocumentIndexer {
         //Schema avroSchema = parser.parse("");
         Schema parsedDocumentAvroSchema = ParsedDocument.SCHEMA$;
 
-        HttpSolrClient httpSolrClient = new HttpSolrClient.Builder()
-                .withBaseSolrUrl("http://beebox02:8983/solr/mycore")
-                .build();
-
-
         String inputPath = line.getOptionValue("i");
 
 
@@ -71,71 +144,161 @@ public class DocumentIndexer {
             return;
         }
 
-        //final DatumReader<Document> reader = new ReflectDatumReader<>(Document.class);
-        final GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>();
-
-        int batchSize = 100;
-        List<SolrInputDocument> solrBatch = new ArrayList<>();
+        int threads = Integer.parseInt(line.getOptionValue("t", "1"));
+        long splitSize = Long.parseLong(line.getOptionValue("s", "0"));
 
+        List<AvroSplit> splits = new ArrayList<>();
         for(File inputFile : files) {
-            if(inputFile.isDirectory()) {
-                continue;
+            // skip the list of deleted files written by an incremental CopyToAvro
+            if(inputFile.isFile() && "avro".equalsIgnoreCase(FilenameUtils.getExtension(inputFile.getName()))) {
+                // a dead letter file only contains the failed documents, all the others would be deleted
+                if(line.hasOption("incremental") && DeadLetterFile.isDeadLetterFile(inputFile)) {
+                    System.err.println("--incremental can't be used to replay the dead letter file " + inputFile);
+                    log.error("--incremental can't be used to replay the dead letter file " + inputFile);
+                    System.exit(-1);
+                }
+                splits.addAll(AvroSplit.split(inputFile, splitSize));
             }
+        }
 
-            try(DataFileReader<GenericRecord> dataFileReader = new DataFileReader<>(inputFile, reader)) {
-                for(GenericRecord inputDocument : dataFileReader) {
-
-                    String id = DigestUtils.sha256Hex(inputDocument.get("path").toString());
-
-                    SolrInputDocument solrDocument = new SolrInputDocument();
-                    String path = inputDocument.get("path").toString();
-                    String md5 = inputDocument.get("md5").toString();
-                    String name = inputDocument.get("name").toString();
-                    String extension = inputDocument.get("extension").toString();
-                    String lang = inputDocument.get("lang").toString();
-                    String body = inputDocument.get("body").toString();
-
-                    Document doc = Jsoup.parse(body, "UTF-8");
-                    //for(Element divPage : doc.select("meta")) {
-                        // TODO String html = divPage.html();
-                    //}
-
-                    StringBuilder bodyTextBuilder = new StringBuilder();
-                    for(Element divPage : doc.select("div[class='page']")) {
-                        for(Element p : divPage.select("p")) {
-                            bodyTextBuilder.append(p.text()).append("\n\n");
-                        }
-                        bodyTextBuilder.append("\n\n");
+        String solrUrl = line.getOptionValue("u", "http://beebox02:8983/solr/mycore");
+        int batchSize = Integer.parseInt(line.getOptionValue("b", String.valueOf(SolrBulkLoader.DEFAULT_BATCH_SIZE)));
+        long batchBytes = Long.parseLong(line.getOptionValue("batch-bytes", String.valueOf(AdaptiveBatchSize.DEFAULT_MAX_BYTES)));
+        long targetLatency = Long.parseLong(line.getOptionValue("target-latency", String.valueOf(AdaptiveBatchSize.DEFAULT_TARGET_LATENCY)));
+        int solrThreads = Integer.parseInt(line.getOptionValue("n", String.valueOf(SolrBulkLoader.DEFAULT_THREADS)));
+        int commitWithin = Integer.parseInt(line.getOptionValue("w", String.valueOf(SolrBulkLoader.DEFAULT_COMMIT_WITHIN)));
+        int retries = Integer.parseInt(line.getOptionValue("r", String.valueOf(BisectingRetry.DEFAULT_RETRIES)));
+        File deadLetterFolder = new File(line.getOptionValue("d", DeadLetterFile.DEFAULT_FOLDER));
+        SolrBulkLoader.Commit commit = SolrBulkLoader.Commit.valueOf(line.getOptionValue("c", "hard").toUpperCase());
+
+        try(HttpSolrClient httpSolrClient = new HttpSolrClient.Builder().withBaseSolrUrl(solrUrl).build()) {
+            // the readers only parse the avro files and the html, the requests to Solr are sent by the loader threads
+            try(DeadLetterFile deadLetterFile = new DeadLetterFile(deadLetterFolder);
+                SolrBulkLoader loader = new SolrBulkLoader(httpSolrClient, new AdaptiveBatchSize(batchSize, batchBytes, targetLatency), solrThreads, commitWithin, commit,
+                        new BisectingRetry(retries, BisectingRetry.DEFAULT_BACKOFF, deadLetterFile))) {
+                SolrSnapshot snapshot = line.hasOption("incremental") ? SolrSnapshot.load(httpSolrClient, null) : null;
+                AtomicLong skipped = new AtomicLong();
+
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    List<Future<?>> results = new ArrayList<>();
+                    for(AvroSplit split : splits) {
+                        results.add(executor.submit(() -> {
+                            indexSplit(split, loader, snapshot, skipped);
+                            return null;
+                        }));
                     }
-                    String bodyText = bodyTextBuilder.toString();
-
-                    solrDocument.addField("id", id);
-                    solrDocument.addField("path_descendent_path", path);
-                    solrDocument.addField("path_txt", path);
-                    solrDocument.addField("name_s", name);
-                    solrDocument.addField("name_txt", name);
-                    solrDocument.addField("extension_s", extension);
-                    solrDocument.addField("md5_s", md5);
-                    solrDocument.addField("body_txt", bodyText);
-                    solrDocument.addField("lang_s", lang);
-                    if(!Strings.isNullOrEmpty(lang)) {
-                        solrDocument.addField("body_txt_"+lang, bodyText);
+                    for(Future<?> result : results) {
+                        result.get();
                     }
-                    solrBatch.add(solrDocument);
+                }
+                finally {
+                    executor.shutdownNow();
+                }
 
-                    if(solrBatch.size() >= batchSize) {
-                        httpSolrClient.add(solrBatch);
-                        httpSolrClient.commit();
-                        solrBatch = new ArrayList<>();
+                if(snapshot != null) {
+                    log.info(skipped.get() + " documents unchanged");
+                    loader.deleteById(deletedIds(pathFile, snapshot));
+                }
+            }
+        }
+    }
+
+    private static void indexSplit(AvroSplit split, SolrBulkLoader loader, SolrSnapshot snapshot, AtomicLong skipped) throws IOException, InterruptedException {
+        try(DataFileReader<GenericRecord> dataFileReader = split.open(new GenericDatumReader<>())) {
+            while(dataFileReader.hasNext() && !dataFileReader.pastSync(split.getEnd())) {
+                GenericRecord record = dataFileReader.next();
+                if(DeadLetterFile.isFailedDocument(record)) {
+                    // replay of a dead letter file
+                    if(snapshot != null) {
+                        snapshot.check(record.get("id").toString());
                     }
+                    loader.add(DeadLetterFile.toSolrDocument(record));
+                }
+                else if(snapshot != null && snapshot.isUnchanged(toId(record.get("path").toString()), record.get("md5").toString())) {
+                    skipped.incrementAndGet();
                 }
+                else {
+                    loader.add(toSolrDocument(record));
+                }
+            }
+        }
+    }
+
+    /**
+     * The output of an incremental CopyToAvro lists the deleted files, the output of a complete CopyToAvro contains all the documents.
+     * Otherwise (a part of an output, files not read by CopyToAvro) the documents not in the input are not deleted.
+     */
+    private static List<String> deletedIds(File inputFolder, SolrSnapshot snapshot) throws IOException {
+        File deletedFile = new File(inputFolder, ChangeManifest.DELETED_FILE_NAME);
+        if(!deletedFile.exists()) {
+            if(new File(inputFolder, ChangeManifest.COMPLETE_FILE_NAME).exists()) {
+                return snapshot.getUncheckedIds();
             }
+            log.warn("Neither " + ChangeManifest.DELETED_FILE_NAME + " nor " + ChangeManifest.COMPLETE_FILE_NAME + " in " + inputFolder + ", nothing deleted");
+            return Collections.emptyList();
+        }
 
+        List<String> ids = new ArrayList<>();
+        for(String path : FileUtils.readLines(deletedFile, "UTF-8")) {
+            if(!path.isEmpty()) {
+                ids.add(toId(path));
+            }
         }
+        return ids;
+    }
+
+    public static String toId(String path) {
+        return DigestUtils.sha256Hex(path);
+    }
 
-        if(solrBatch.size() > 0) {
-            httpSolrClient.add(solrBatch);
-            httpSolrClient.commit();
+    private static SolrInputDocument toSolrDocument(GenericRecord inputDocument) {
+        return toSolrDocument(
+                inputDocument.get("path").toString(),
+                inputDocument.get("md5").toString(),
+                inputDocument.get("name").toString(),
+                inputDocument.get("extension").toString(),
+                inputDocument.get("lang").toString(),
+                inputDocument.get("body").toString());
+    }
+
+    public static SolrInputDocument toSolrDocument(String path, String md5, String name, String extension, String lang, String body) {
+        String id = toId(path);
+
+        SolrInputDocument solrDocument = new SolrInputDocument();
+
+        Document doc = Jsoup.parse(body, "UTF-8");
+        //for(Element divPage : doc.select("meta")) {
+            // TODO String html = divPage.html();
+        //}
+
+        StringBuilder bodyTextBuilder = new StringBuilder();
+        for(Element divPage : doc.select("div[class='page']")) {
+            for(Element p : divPage.select("p")) {
+                bodyTextBuilder.append(p.text()).append("\n\n");
+            }
+            bodyTextBuilder.append("\n\n");
+        }
+        String bodyText = bodyTextBuilder.toString();
+
+        solrDocument.addField("id", id);
+        solrDocument.addField("path_descendent_path", path);
+        solrDocument.addField("path_txt", path);
+        solrDocument.addField("name_s", name);
+        solrDocument.addField("name_txt", name);
+        solrDocument.addField("extension_s", extension);
+        solrDocument.addField("md5_s", md5);
+        solrDocument.addField("body_txt", bodyText);
+        solrDocument.addField("lang_s", lang);
+        if(!Strings.isNullOrEmpty(lang)) {
+            solrDocument.addField("body_txt_"+lang, bodyText);
+        }
+        // near duplicates, see MinHash
+        int[] signature = MinHash.signature(bodyText);
+        if(signature != null) {
+            solrDocument.addField("minhash_s", MinHash.encode(signature));
+            solrDocument.addField("lsh_ss", MinHash.bands(signature));
         }
+        return solrDocument;
     }
-}
+}
\ No newline at end of file
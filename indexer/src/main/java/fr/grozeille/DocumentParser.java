@@ -0,0 +1,251 @@
+package fr.grozeille;
+
+import com.google.common.base.Strings;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
+import org.apache.poi.hpsf.PropertySetFactory;
+import org.apache.poi.hpsf.SummaryInformation;
+import org.apache.poi.ooxml.POIXMLProperties;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.Office;
+import org.apache.tika.metadata.OfficeOpenXMLCore;
+import org.apache.tika.metadata.PDF;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.ExpandedTitleContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.ContentHandler;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Reusable extraction engine, one instance can be shared by all the worker threads.
+ * Tika parsers are stateless so a single AutoDetectParser is used, the transformer factories are not thread-safe
+ * so each thread gets its own.
+ * Metadata are read from the Tika parse, the document is only opened again with PDFBox/POI when
+ * metadataFallback is enabled and some fields are missing.
+ * The large documents are parsed from a stream, their html body is truncated to MAX_STREAMED_BODY_CHARS.
+ */
+@Slf4j
+public class DocumentParser {
+
+    public static final int MAX_STREAMED_BODY_CHARS = 10000000;
+
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
+
+    private static final ThreadLocal<SAXTransformerFactory> transformerFactory =
+            ThreadLocal.withInitial(() -> (SAXTransformerFactory) SAXTransformerFactory.newInstance());
+
+    private final Parser parser = new AutoDetectParser();
+
+    private final boolean metadataFallback;
+
+    public DocumentParser(boolean metadataFallback) {
+        this.metadataFallback = metadataFallback;
+    }
+
+    public ExtractDocument parseBody(String path, byte[] bytes) {
+        return parseBody(path, new ByteArrayInputStream(bytes), bytes, -1);
+    }
+
+    /**
+     * Parse a document too big to be read in memory, without the PDFBox/POI metadata fallback.
+     * The stream is not closed.
+     */
+    public ExtractDocument parseBody(String path, InputStream stream) {
+        return parseBody(path, stream, null, MAX_STREAMED_BODY_CHARS);
+    }
+
+    private ExtractDocument parseBody(String path, InputStream stream, byte[] bytes, int maxBodyChars) {
+        ExtractDocument result = new ExtractDocument();
+
+        log.info("Parsing file: "+path);
+
+        String extension = FilenameUtils.getExtension(path);
+        Metadata metadata = new Metadata();
+
+        // parse document
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        WriteOutContentHandler limitHandler = null;
+        try {
+            ContentHandler htmlHandler = newHtmlHandler(bos);
+            if(maxBodyChars > 0) {
+                htmlHandler = limitHandler = new WriteOutContentHandler(htmlHandler, maxBodyChars);
+            }
+            ExpandedTitleContentHandler handler = new ExpandedTitleContentHandler(htmlHandler);
+
+            // the parser of the embedded documents (attachments, OLE objects, files of containers)
+            ParseContext context = new ParseContext();
+            context.set(Parser.class, parser);
+            parser.parse(stream, handler, metadata, context);
+            result.setHtmlBody(new String(bos.toByteArray(), StandardCharsets.UTF_8));
+        }catch (Exception ex){
+            if(limitHandler != null && limitHandler.isWriteLimitReached(ex)) {
+                log.warn("Body of " + path + " truncated to " + maxBodyChars + " chars");
+                result.setHtmlBody(new String(bos.toByteArray(), StandardCharsets.UTF_8));
+            }
+            else {
+                log.error("Unable to parse file: " + path, ex);
+                result.setHtmlBody("");
+            }
+        }
+
+        Map<String, String> documentMetadata = result.getMetadata();
+
+        if("pdf".equalsIgnoreCase(extension)){
+            documentMetadata.put("title", metadata.get(TikaCoreProperties.TITLE));
+            documentMetadata.put("author", metadata.get(TikaCoreProperties.CREATOR));
+            documentMetadata.put("subject", metadata.get(OfficeOpenXMLCore.SUBJECT));
+            documentMetadata.put("keywords", metadata.get(Office.KEYWORDS));
+            documentMetadata.put("creator", metadata.get(TikaCoreProperties.CREATOR_TOOL));
+            documentMetadata.put("producer", metadata.get(PDF.DOC_INFO_PRODUCER));
+            documentMetadata.put("creationDate", formatDate(metadata.getDate(TikaCoreProperties.CREATED)));
+            documentMetadata.put("modificationDate", formatDate(metadata.getDate(TikaCoreProperties.MODIFIED)));
+
+            if("true".equalsIgnoreCase(metadata.get(PDF.IS_ENCRYPTED))) {
+                log.warn("Unable to decrypt PDF: " + path);
+            }
+
+            if(bytes != null && metadataFallback && hasMissingValue(documentMetadata)) {
+                readPdfMetadata(path, bytes, documentMetadata);
+            }
+        }
+        else if("docx".equalsIgnoreCase(extension) || "pptx".equalsIgnoreCase(extension)){
+            documentMetadata.put("title", metadata.get(TikaCoreProperties.TITLE));
+            documentMetadata.put("description", metadata.get(TikaCoreProperties.DESCRIPTION));
+            documentMetadata.put("creator", metadata.get(TikaCoreProperties.CREATOR));
+            documentMetadata.put("keywords", metadata.get(Office.KEYWORDS));
+            documentMetadata.put("subject", metadata.get(OfficeOpenXMLCore.SUBJECT));
+
+            if(bytes != null && metadataFallback && hasMissingValue(documentMetadata)) {
+                readOoxmlMetadata(path, extension, bytes, documentMetadata);
+            }
+        }
+        else if("doc".equalsIgnoreCase(extension)){
+            documentMetadata.put("title", metadata.get(TikaCoreProperties.TITLE));
+            documentMetadata.put("lastAuthor", metadata.get(TikaCoreProperties.MODIFIER));
+            documentMetadata.put("author", metadata.get(TikaCoreProperties.CREATOR));
+            documentMetadata.put("keywords", metadata.get(Office.KEYWORDS));
+            documentMetadata.put("comments", metadata.get(TikaCoreProperties.COMMENTS));
+            documentMetadata.put("subject", metadata.get(OfficeOpenXMLCore.SUBJECT));
+
+            if(bytes != null && metadataFallback && hasMissingValue(documentMetadata)) {
+                readDocMetadata(path, bytes, documentMetadata);
+            }
+        }
+
+        return result;
+    }
+
+    private static void readPdfMetadata(String path, byte[] bytes, Map<String, String> documentMetadata) {
+        try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
+            try (PDDocument document = PDDocument.load(stream)) {
+                PDDocumentInformation info = document.getDocumentInformation();
+
+                fill(documentMetadata, "title", info.getTitle());
+                fill(documentMetadata, "author", info.getAuthor());
+                fill(documentMetadata, "subject", info.getSubject());
+                fill(documentMetadata, "keywords", info.getKeywords());
+                fill(documentMetadata, "creator", info.getCreator());
+                fill(documentMetadata, "producer", info.getProducer());
+                fill(documentMetadata, "creationDate", formatDate(info.getCreationDate()));
+                fill(documentMetadata, "modificationDate", formatDate(info.getModificationDate()));
+            }
+        }
+        catch (Exception ex){
+            log.error("Unable to read PDF metadata: " + path, ex);
+        }
+    }
+
+    private static void readOoxmlMetadata(String path, String extension, byte[] bytes, Map<String, String> documentMetadata) {
+        try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
+            POIXMLProperties.CoreProperties props;
+            if("docx".equalsIgnoreCase(extension)) {
+                try (XWPFDocument document = new XWPFDocument(stream)) {
+                    props = document.getProperties().getCoreProperties();
+                }
+            }
+            else {
+                try (XMLSlideShow document = new XMLSlideShow(stream)) {
+                    props = document.getProperties().getCoreProperties();
+                }
+            }
+
+            fill(documentMetadata, "title", props.getTitle());
+            fill(documentMetadata, "description", props.getDescription());
+            fill(documentMetadata, "creator", props.getCreator());
+            fill(documentMetadata, "keywords", props.getKeywords());
+            fill(documentMetadata, "subject", props.getSubject());
+        }
+        catch (Exception ex){
+            log.error("Unable to read " + extension.toUpperCase() + " metadata: " + path, ex);
+        }
+    }
+
+    private static void readDocMetadata(String path, byte[] bytes, Map<String, String> documentMetadata) {
+        try(ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
+            SummaryInformation si = (SummaryInformation) PropertySetFactory.create(stream);
+
+            fill(documentMetadata, "title", si.getTitle());
+            fill(documentMetadata, "lastAuthor", si.getLastAuthor());
+            fill(documentMetadata, "author", si.getAuthor());
+            fill(documentMetadata, "keywords", si.getKeywords());
+            fill(documentMetadata, "comments", si.getComments());
+            fill(documentMetadata, "subject", si.getSubject());
+        }
+        catch (Exception ex){
+            log.error("Unable to read DOC metadata: " + path, ex);
+        }
+    }
+
+    private static boolean hasMissingValue(Map<String, String> documentMetadata) {
+        for(String value : documentMetadata.values()) {
+            if(Strings.isNullOrEmpty(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void fill(Map<String, String> documentMetadata, String key, String value) {
+        if(Strings.isNullOrEmpty(documentMetadata.get(key))) {
+            documentMetadata.put(key, value);
+        }
+    }
+
+    private static TransformerHandler newHtmlHandler(ByteArrayOutputStream bos) throws TransformerConfigurationException {
+        TransformerHandler handler = transformerFactory.get().newTransformerHandler();
+        handler.getTransformer().setOutputProperty(OutputKeys.METHOD, "html");
+        handler.getTransformer().setOutputProperty(OutputKeys.INDENT, "yes");
+        handler.getTransformer().setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        handler.setResult(new StreamResult(bos));
+        return handler;
+    }
+
+    private static String formatDate(Date date) {
+        return date != null ? dateFormat.format(date.toInstant()) : "";
+    }
+
+    private static String formatDate(Calendar calendar) {
+        return calendar != null ? dateFormat.format(calendar.toInstant()) : "";
+    }
+}
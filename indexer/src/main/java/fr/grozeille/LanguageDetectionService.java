@@ -0,0 +1,90 @@
+package fr.grozeille;
+
+import com.optimaize.langdetect.DetectedLanguage;
+import com.optimaize.langdetect.LanguageDetector;
+import com.optimaize.langdetect.LanguageDetectorBuilder;
+import com.optimaize.langdetect.i18n.LdLocale;
+import com.optimaize.langdetect.ngram.NgramExtractors;
+import com.optimaize.langdetect.profiles.BuiltInLanguages;
+import com.optimaize.langdetect.profiles.LanguageProfile;
+import com.optimaize.langdetect.profiles.LanguageProfileReader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.language.detect.LanguageConfidence;
+import org.apache.tika.language.detect.LanguageNames;
+import org.apache.tika.language.detect.LanguageResult;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Language detection shared by all the extraction threads.
+ * The profiles are loaded once, the underlying Optimaize detector is immutable and thread-safe.
+ */
+@Slf4j
+public class LanguageDetectionService {
+
+    public static final int DEFAULT_MAX_CHARS = 20000;
+
+    private final LanguageDetector detector;
+
+    private final Set<String> languages;
+
+    private final int maxChars;
+
+    public LanguageDetectionService(Collection<String> languages, int maxChars) throws IOException {
+        this.maxChars = maxChars > 0 ? maxChars : DEFAULT_MAX_CHARS;
+
+        List<LdLocale> locales = new ArrayList<>();
+        Set<String> wanted = new HashSet<>();
+        if(languages != null) {
+            for(String l : languages) {
+                wanted.add(LanguageNames.normalizeName(l));
+            }
+        }
+        for(LdLocale locale : BuiltInLanguages.getLanguages()) {
+            if(wanted.isEmpty() || wanted.contains(makeLanguageName(locale))) {
+                locales.add(locale);
+            }
+        }
+
+        List<LanguageProfile> profiles = new LanguageProfileReader().readBuiltIn(locales);
+        this.detector = LanguageDetectorBuilder.create(NgramExtractors.standard())
+                .shortTextAlgorithm(30)
+                .withProfiles(profiles)
+                .build();
+
+        Set<String> loaded = new TreeSet<>();
+        for(LanguageProfile profile : profiles) {
+            loaded.add(makeLanguageName(profile.getLocale()));
+        }
+        this.languages = Collections.unmodifiableSet(loaded);
+
+        log.info("Language models loaded: " + String.join(", ", this.languages));
+    }
+
+    public Set<String> getLanguages() {
+        return languages;
+    }
+
+    public LanguageResult detect(String text) {
+        if(text == null || text.isEmpty()) {
+            return LanguageResult.NULL;
+        }
+
+        CharSequence sample = text.length() > maxChars ? text.subSequence(0, maxChars) : text;
+
+        List<DetectedLanguage> probabilities = detector.getProbabilities(sample);
+        if(probabilities.isEmpty()) {
+            return LanguageResult.NULL;
+        }
+
+        // same confidence mapping as Tika's OptimaizeLangDetector
+        DetectedLanguage best = probabilities.get(0);
+        LanguageConfidence confidence = best.getProbability() > 0.9 ? LanguageConfidence.HIGH : LanguageConfidence.MEDIUM;
+        return new LanguageResult(makeLanguageName(best.getLocale()), confidence, (float) best.getProbability());
+    }
+
+    private static String makeLanguageName(LdLocale locale) {
+        return LanguageNames.makeName(locale.getLanguage(), locale.getScript().orNull(), locale.getRegion().orNull());
+    }
+}
@@ -0,0 +1,20 @@
+package fr.grozeille;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ManifestEntry {
+    private String path;
+
+    private long size;
+
+    private long lastModified;
+
+    private String md5;
+
+    private boolean archive;
+}
@@ -0,0 +1,213 @@
+package fr.grozeille;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Lists all the files under a folder, the folders are read in parallel by a work-stealing pool.
+ * The files are returned as soon as they are found, with their attributes (read once per file),
+ * at most queueSize files are waiting to be consumed.
+ * Symbolic links to files are followed, symbolic links to folders are not.
+ * The folders that can't be listed and the paths whose attributes can't be read are skipped and reported
+ * by getFailedPaths(): the files under them are missing, they must not be considered as deleted.
+ * <pre>
+ * try(ParallelFileWalker walker = new ParallelFileWalker(root, parallelism)) {
+ *     for(ParallelFileWalker.FileEntry file : walker) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+@Slf4j
+public class ParallelFileWalker implements Iterable<ParallelFileWalker.FileEntry>, Closeable {
+
+    public static final int DEFAULT_PARALLELISM = Math.max(8, Runtime.getRuntime().availableProcessors());
+
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    private static final FileEntry END = new FileEntry(null, null);
+
+    private final Path root;
+
+    private final ForkJoinPool pool;
+
+    private final BlockingQueue<FileEntry> queue;
+
+    private boolean started = false;
+
+    private final Queue<Path> failedPaths = new ConcurrentLinkedQueue<>();
+
+    public ParallelFileWalker(Path root, int parallelism) {
+        this(root, parallelism, DEFAULT_QUEUE_SIZE);
+    }
+
+    public ParallelFileWalker(Path root, int parallelism, int queueSize) {
+        this.root = root;
+        this.pool = new ForkJoinPool(parallelism);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    @Override
+    public synchronized Iterator<FileEntry> iterator() {
+        if(started) {
+            throw new IllegalStateException("The folder " + root + " is already walked");
+        }
+        started = true;
+
+        pool.execute(() -> {
+            try {
+                new ScanFolder(root).invoke();
+            }
+            catch(Exception ex) {
+                log.error("Unable to scan folder " + root, ex);
+                failedPaths.add(root);
+            }
+            finally {
+                put(END);
+            }
+        });
+
+        return new Iterator<FileEntry>() {
+            private FileEntry next = null;
+
+            @Override
+            public boolean hasNext() {
+                if(next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        next = END;
+                    }
+                }
+                return next != END;
+            }
+
+            @Override
+            public FileEntry next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                FileEntry result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * The folders not listed (or partly listed) and the paths whose attributes couldn't be read,
+     * complete at the end of the iteration.
+     */
+    public List<Path> getFailedPaths() {
+        return new ArrayList<>(failedPaths);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void put(FileEntry entry) {
+        try {
+            // let the pool start another thread while this one is waiting for the consumer
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                private boolean done = false;
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    queue.put(entry);
+                    done = true;
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return done || (done = queue.offer(entry));
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class ScanFolder extends RecursiveAction {
+
+        private final Path folder;
+
+        private ScanFolder(Path folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            List<ScanFolder> subFolders = new ArrayList<>();
+
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+                for(Path child : stream) {
+                    if(pool.isShutdown()) {
+                        return;
+                    }
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if(attributes.isSymbolicLink()) {
+                            attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                            if(attributes.isDirectory()) {
+                                continue;
+                            }
+                        }
+                    } catch (IOException ex) {
+                        log.warn("Unable to read attributes of " + child + ": " + ex.getMessage());
+                        failedPaths.add(child);
+                        continue;
+                    }
+
+                    if(attributes.isDirectory()) {
+                        subFolders.add(new ScanFolder(child));
+                    }
+                    else if(attributes.isRegularFile()) {
+                        put(new FileEntry(child, attributes));
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException ex) {
+                log.warn("Unable to list folder " + folder + ": " + ex.getMessage());
+                failedPaths.add(folder);
+            }
+
+            invokeAll(subFolders);
+        }
+    }
+
+    @Data
+    public static class FileEntry {
+        private final Path path;
+
+        private final BasicFileAttributes attributes;
+
+        public File toFile() {
+            return path.toFile();
+        }
+    }
+}
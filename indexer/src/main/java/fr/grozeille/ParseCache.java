@@ -0,0 +1,47 @@
+package fr.grozeille;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.Data;
+
+/**
+ * Result of the extraction (html body and language) by md5 of the content, shared by the extraction threads,
+ * so the copies of a document found in several folders or zip files are only parsed once per run.
+ * The cache is bounded by the total size of the bodies (maxSize chars), the least recently used entries are evicted.
+ * The documents not modified since the previous run are already skipped by the CopyToAvro manifest,
+ * so the cache is not kept between the runs.
+ */
+public class ParseCache {
+
+    public static final long DEFAULT_MAX_SIZE = 1024l*1024l*256l;
+
+    private final Cache<String, Entry> cache;
+
+    public ParseCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((String md5, Entry entry) -> entry.getHtmlBody().length())
+                .recordStats()
+                .build();
+    }
+
+    public Entry get(String md5) {
+        return cache.getIfPresent(md5);
+    }
+
+    public void put(String md5, Entry entry) {
+        cache.put(md5, entry);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Data
+    public static class Entry {
+        private final String htmlBody;
+
+        private final String lang;
+    }
+}
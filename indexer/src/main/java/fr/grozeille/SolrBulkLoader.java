@@ -0,0 +1,225 @@
+package fr.grozeille;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the documents to Solr in batches, with several batches in flight on a pool of threads
+ * (same idea as ConcurrentUpdateSolrClient, but the errors are handled per batch by BisectingRetry).
+ * The batches are only made visible by commitWithin, a single commit is done when the loader is closed.
+ * add() blocks when all the in-flight slots are used, so the readers can't get too far ahead of Solr.
+ * The batches are cut by number of documents and by bytes, see AdaptiveBatchSize.
+ */
+@Slf4j
+public class SolrBulkLoader implements Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    public static final int DEFAULT_THREADS = 4;
+
+    public static final int DEFAULT_COMMIT_WITHIN = 60000;
+
+    private static final int deleteBatchSize = 1000;
+
+    public enum Commit { HARD, SOFT, NONE }
+
+    private final SolrClient solrClient;
+
+    private final AdaptiveBatchSize batchSize;
+
+    private final int commitWithin;
+
+    private final Commit finalCommit;
+
+    private final BisectingRetry retry;
+
+    private final ExecutorService executor;
+
+    private final Semaphore inFlight;
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong deleted = new AtomicLong();
+
+    private List<SolrInputDocument> batch = new ArrayList<>();
+
+    private long batchBytes = 0;
+
+    /**
+     * @param commitWithin max delay (ms) before the documents are visible, no commitWithin if negative
+     */
+    public SolrBulkLoader(SolrClient solrClient, AdaptiveBatchSize batchSize, int threads, int commitWithin, Commit finalCommit, BisectingRetry retry) {
+        this.solrClient = solrClient;
+        this.batchSize = batchSize;
+        this.commitWithin = commitWithin;
+        this.finalCommit = finalCommit;
+        this.retry = retry;
+        this.executor = Executors.newFixedThreadPool(threads);
+        // one batch sent by each thread and one waiting for each thread
+        this.inFlight = new Semaphore(threads * 2);
+    }
+
+    public void add(SolrInputDocument document) throws InterruptedException {
+        long documentBytes = AdaptiveBatchSize.sizeOf(document);
+        List<SolrInputDocument> previousBatch = null;
+        List<SolrInputDocument> fullBatch = null;
+        synchronized (this) {
+            if(batchSize.isOverflow(batch.size(), batchBytes, documentBytes)) {
+                previousBatch = batch;
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(document);
+            batchBytes += documentBytes;
+            if(batchSize.isFull(batch.size(), batchBytes)) {
+                fullBatch = batch;
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if(previousBatch != null) {
+            submit(previousBatch);
+        }
+        if(fullBatch != null) {
+            submit(fullBatch);
+        }
+    }
+
+    public void flush() throws InterruptedException {
+        List<SolrInputDocument> lastBatch;
+        synchronized (this) {
+            lastBatch = batch;
+            batch = new ArrayList<>();
+            batchBytes = 0;
+        }
+        if(!lastBatch.isEmpty()) {
+            submit(lastBatch);
+        }
+    }
+
+    private void submit(List<SolrInputDocument> documents) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    send(documents);
+                }
+                finally {
+                    inFlight.release();
+                }
+            });
+        }
+        catch(RuntimeException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    private void send(List<SolrInputDocument> documents) {
+        try {
+            int deadLetters = retry.send(documents, this::sendRequest);
+            failed.addAndGet(deadLetters);
+
+            long total = sent.addAndGet(documents.size() - deadLetters);
+            log.info("Indexed " + total + " documents, " + batchSize.getStats());
+        }
+        catch(InterruptedException ex) {
+            failed.addAndGet(documents.size());
+            Thread.currentThread().interrupt();
+        }
+        catch(Exception ex) {
+            // the dead letter file can't be written
+            failed.addAndGet(documents.size());
+            log.error("Unable to index a batch of " + documents.size() + " documents, first one: " + documents.get(0).getFieldValue("path_txt"), ex);
+        }
+    }
+
+    private void sendRequest(List<SolrInputDocument> documents) throws IOException, SolrServerException {
+        UpdateRequest request = new UpdateRequest();
+        request.add(documents);
+        if(commitWithin >= 0) {
+            request.setCommitWithin(commitWithin);
+        }
+        long bytes = 0;
+        for(SolrInputDocument document : documents) {
+            bytes += AdaptiveBatchSize.sizeOf(document);
+        }
+        try {
+            long start = System.currentTimeMillis();
+            request.process(solrClient);
+            batchSize.onSuccess(documents.size(), bytes, System.currentTimeMillis() - start);
+        }
+        catch(IOException | SolrServerException | RuntimeException ex) {
+            batchSize.onFailure(documents.size(), ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Deletes the documents, in requests of 1000 ids sent by the calling thread.
+     */
+    public void deleteById(List<String> ids) throws IOException, SolrServerException {
+        for(int i = 0; i < ids.size(); i += deleteBatchSize) {
+            UpdateRequest request = new UpdateRequest();
+            request.deleteById(ids.subList(i, Math.min(ids.size(), i + deleteBatchSize)));
+            if(commitWithin >= 0) {
+                request.setCommitWithin(commitWithin);
+            }
+            request.process(solrClient);
+            deleted.addAndGet(Math.min(ids.size() - i, deleteBatchSize));
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public AdaptiveBatchSize.Stats getStats() {
+        return batchSize.getStats();
+    }
+
+    /**
+     * Sends the last batch, waits for all the batches in flight and commits.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            if(finalCommit != Commit.NONE) {
+                solrClient.commit(true, true, finalCommit == Commit.SOFT);
+            }
+        }
+        catch(InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the batches in flight", ex);
+        }
+        catch(Exception ex) {
+            throw new IOException("Unable to commit", ex);
+        }
+
+        log.info("Indexed " + sent.get() + " documents, " + failed.get() + " failed, " + deleted.get() + " deleted");
+    }
+}
@@ -0,0 +1,78 @@
+package fr.grozeille;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * id and md5 of all the documents already in Solr, read in pages with a cursor before an incremental indexation.
+ * Each document of the input is checked once: the unchanged ones don't have to be sent again,
+ * the ids never checked are the documents not in the input anymore.
+ */
+@Slf4j
+public class SolrSnapshot {
+
+    private static final int pageSize = 10000;
+
+    private final ConcurrentMap<String, String> md5ById = new ConcurrentHashMap<>();
+
+    public static SolrSnapshot load(SolrClient solrClient, String collection) throws IOException, SolrServerException {
+        SolrSnapshot snapshot = new SolrSnapshot();
+
+        SolrQuery solrQuery = new SolrQuery("*:*");
+        solrQuery.setFields("id", "md5_s");
+        solrQuery.setRows(pageSize);
+        solrQuery.setSort(SolrQuery.SortClause.asc("id"));
+
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while(true) {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = solrClient.query(collection, solrQuery);
+            for(SolrDocument document : response.getResults()) {
+                Object md5 = document.getFieldValue("md5_s");
+                snapshot.md5ById.put(document.getFieldValue("id").toString(), md5 != null ? md5.toString() : "");
+            }
+
+            String nextCursorMark = response.getNextCursorMark();
+            if(cursorMark.equals(nextCursorMark)) {
+                break;
+            }
+            cursorMark = nextCursorMark;
+        }
+
+        log.info(snapshot.md5ById.size() + " documents already indexed");
+        return snapshot;
+    }
+
+    /**
+     * Checks a document of the input, true if it is already indexed with the same content.
+     */
+    public boolean isUnchanged(String id, String md5) {
+        String indexedMd5 = md5ById.remove(id);
+        return indexedMd5 != null && indexedMd5.equalsIgnoreCase(md5);
+    }
+
+    /**
+     * Checks a document of the input sent again whatever its content.
+     */
+    public void check(String id) {
+        md5ById.remove(id);
+    }
+
+    /**
+     * The documents indexed but not checked, so not in the input.
+     */
+    public List<String> getUncheckedIds() {
+        return new ArrayList<>(md5ById.keySet());
+    }
+}
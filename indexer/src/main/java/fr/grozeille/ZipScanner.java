@@ -0,0 +1,223 @@
+package fr.grozeille;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.*;
+
+/**
+ * Reads the entries of zip files from the central directory instead of streaming the whole archive:
+ * the entries are filtered by name before being inflated and are read in parallel,
+ * the nested zip files are opened in memory, or from a temporary file when they are bigger than inMemoryThreshold.
+ * The documents bigger than inMemoryThreshold are not read by the pool, the visitor streams them with ZipDocument.openStream.
+ * The visitor is always called from the thread calling scan.
+ */
+@Slf4j
+public class ZipScanner implements Closeable {
+
+    public static final int DEFAULT_THREADS = 4;
+
+    public static final long DEFAULT_IN_MEMORY_THRESHOLD = 1024l*1024l*64l;
+
+    private final ExecutorService executor;
+
+    private final int queueSize;
+
+    private final long inMemoryThreshold;
+
+    public ZipScanner(int threads, long inMemoryThreshold) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.queueSize = threads * 4;
+        this.inMemoryThreshold = inMemoryThreshold;
+    }
+
+    public static boolean isZip(String name) {
+        return "zip".equalsIgnoreCase(FilenameUtils.getExtension(name));
+    }
+
+    public void scan(File file, String path, Visitor visitor) throws IOException {
+        log.debug("Scan zip file: " + path);
+        try(ZipFile zipFile = new ZipFile(file)) {
+            scan(zipFile, path, visitor);
+        }
+    }
+
+    private void scan(ZipFile zipFile, String path, Visitor visitor) throws IOException {
+        CompletionService<ZipDocument> completion = new ExecutorCompletionService<>(executor);
+        int pending = 0;
+
+        for(ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+            if(entry.isDirectory()) {
+                continue;
+            }
+
+            String entryPath = path + "/" + entry.getName();
+            if(!visitor.accept(entryPath, entry)) {
+                continue;
+            }
+
+            if(isZip(entry.getName())) {
+                scanNested(zipFile, entry, entryPath, visitor);
+            }
+            else if(!zipFile.canReadEntryData(entry)) {
+                visitor.failed(entryPath, new IOException("Unsupported compression method or encryption"));
+            }
+            else if(entry.getSize() < 0 || entry.getSize() > inMemoryThreshold) {
+                visitor.visit(new ZipDocument(entryPath, entry, zipFile));
+            }
+            else {
+                completion.submit(() -> {
+                    try(InputStream stream = zipFile.getInputStream(entry)) {
+                        return new ZipDocument(entryPath, entry, IOUtils.toByteArray(stream));
+                    }
+                    catch(IOException ex) {
+                        return new ZipDocument(entryPath, entry, ex);
+                    }
+                });
+                pending++;
+            }
+
+            for(; pending >= queueSize; pending--) {
+                visit(completion, visitor);
+            }
+        }
+
+        for(; pending > 0; pending--) {
+            visit(completion, visitor);
+        }
+    }
+
+    private void scanNested(ZipFile parent, ZipArchiveEntry entry, String entryPath, Visitor visitor) throws IOException {
+        log.debug("Scan zip file: " + entryPath);
+        Path tmpFile = null;
+        try {
+            ZipFile zipFile;
+            try(InputStream stream = parent.getInputStream(entry)) {
+                if(entry.getSize() >= 0 && entry.getSize() <= inMemoryThreshold) {
+                    zipFile = new ZipFile(new SeekableInMemoryByteChannel(IOUtils.toByteArray(stream)));
+                }
+                else {
+                    tmpFile = Files.createTempFile("nested", ".zip");
+                    Files.copy(stream, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+                    zipFile = new ZipFile(tmpFile.toFile());
+                }
+            }
+            try {
+                scan(zipFile, entryPath, visitor);
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+        catch(IOException ex) {
+            visitor.failed(entryPath, ex);
+        }
+        finally {
+            if(tmpFile != null) {
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+    }
+
+    private void visit(CompletionService<ZipDocument> completion, Visitor visitor) throws IOException {
+        ZipDocument document;
+        try {
+            document = completion.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        if(document.getError() != null) {
+            visitor.failed(document.getPath(), document.getError());
+        }
+        else {
+            visitor.visit(document);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public interface Visitor {
+        /**
+         * Called before reading an entry (or opening a nested zip file), false to skip it.
+         */
+        boolean accept(String entryPath, ZipArchiveEntry entry);
+
+        void visit(ZipDocument document) throws IOException;
+
+        default void failed(String entryPath, Exception ex) {
+            log.error("Unable to read zip entry " + entryPath, ex);
+        }
+    }
+
+    @Data
+    public static class ZipDocument {
+        private final String path;
+
+        private final ZipArchiveEntry entry;
+
+        /**
+         * null when the entry is bigger than inMemoryThreshold
+         */
+        private final byte[] content;
+
+        private final IOException error;
+
+        @Getter(AccessLevel.NONE)
+        private final ZipFile zipFile;
+
+        private ZipDocument(String path, ZipArchiveEntry entry, byte[] content) {
+            this(path, entry, content, null, null);
+        }
+
+        private ZipDocument(String path, ZipArchiveEntry entry, IOException error) {
+            this(path, entry, null, error, null);
+        }
+
+        private ZipDocument(String path, ZipArchiveEntry entry, ZipFile zipFile) {
+            this(path, entry, null, null, zipFile);
+        }
+
+        private ZipDocument(String path, ZipArchiveEntry entry, byte[] content, IOException error, ZipFile zipFile) {
+            this.path = path;
+            this.entry = entry;
+            this.content = content;
+            this.error = error;
+            this.zipFile = zipFile;
+        }
+
+        public boolean isInMemory() {
+            return content != null;
+        }
+
+        /**
+         * Only valid during the call to the visitor.
+         */
+        public InputStream openStream() throws IOException {
+            return isInMemory() ? new ByteArrayInputStream(content) : zipFile.getInputStream(entry);
+        }
+    }
+}
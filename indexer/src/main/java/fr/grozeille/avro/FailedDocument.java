@@ -0,0 +1,447 @@
+/**
+ * Autogenerated by Avro
+ *
+ * DO NOT EDIT DIRECTLY
+ */
+package fr.grozeille.avro;
+
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.message.BinaryMessageEncoder;
+import org.apache.avro.message.BinaryMessageDecoder;
+import org.apache.avro.message.SchemaStore;
+
+@SuppressWarnings("all")
+@org.apache.avro.specific.AvroGenerated
+public class FailedDocument extends org.apache.avro.specific.SpecificRecordBase implements org.apache.avro.specific.SpecificRecord {
+  private static final long serialVersionUID = 4365128773995428716L;
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"FailedDocument\",\"namespace\":\"fr.grozeille.avro\",\"fields\":[{\"name\":\"id\",\"type\":\"string\"},{\"name\":\"fields\",\"type\":{\"type\":\"map\",\"values\":{\"type\":\"array\",\"items\":\"string\"}}},{\"name\":\"error\",\"type\":\"string\"},{\"name\":\"time\",\"type\":\"long\"}]}");
+  public static org.apache.avro.Schema getClassSchema() { return SCHEMA$; }
+
+  private static SpecificData MODEL$ = new SpecificData();
+
+  private static final BinaryMessageEncoder<FailedDocument> ENCODER =
+      new BinaryMessageEncoder<FailedDocument>(MODEL$, SCHEMA$);
+
+  private static final BinaryMessageDecoder<FailedDocument> DECODER =
+      new BinaryMessageDecoder<FailedDocument>(MODEL$, SCHEMA$);
+
+  /**
+   * Return the BinaryMessageDecoder instance used by this class.
+   */
+  public static BinaryMessageDecoder<FailedDocument> getDecoder() {
+    return DECODER;
+  }
+
+  /**
+   * Create a new BinaryMessageDecoder instance for this class that uses the specified {@link SchemaStore}.
+   * @param resolver a {@link SchemaStore} used to find schemas by fingerprint
+   */
+  public static BinaryMessageDecoder<FailedDocument> createDecoder(SchemaStore resolver) {
+    return new BinaryMessageDecoder<FailedDocument>(MODEL$, SCHEMA$, resolver);
+  }
+
+  /** Serializes this FailedDocument to a ByteBuffer. */
+  public java.nio.ByteBuffer toByteBuffer() throws java.io.IOException {
+    return ENCODER.encode(this);
+  }
+
+  /** Deserializes a FailedDocument from a ByteBuffer. */
+  public static FailedDocument fromByteBuffer(
+      java.nio.ByteBuffer b) throws java.io.IOException {
+    return DECODER.decode(b);
+  }
+
+  @Deprecated public java.lang.CharSequence id;
+  @Deprecated public java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> fields;
+  @Deprecated public java.lang.CharSequence error;
+  @Deprecated public long time;
+
+  /**
+   * Default constructor.  Note that this does not initialize fields
+   * to their default values from the schema.  If that is desired then
+   * one should use <code>newBuilder()</code>.
+   */
+  public FailedDocument() {}
+
+  /**
+   * All-args constructor.
+   * @param id The new value for id
+   * @param fields The new value for fields
+   * @param error The new value for error
+   * @param time The new value for time
+   */
+  public FailedDocument(java.lang.CharSequence id, java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> fields, java.lang.CharSequence error, java.lang.Long time) {
+    this.id = id;
+    this.fields = fields;
+    this.error = error;
+    this.time = time;
+  }
+
+  public org.apache.avro.Schema getSchema() { return SCHEMA$; }
+  // Used by DatumWriter.  Applications should not call.
+  public java.lang.Object get(int field$) {
+    switch (field$) {
+    case 0: return id;
+    case 1: return fields;
+    case 2: return error;
+    case 3: return time;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  // Used by DatumReader.  Applications should not call.
+  @SuppressWarnings(value="unchecked")
+  public void put(int field$, java.lang.Object value$) {
+    switch (field$) {
+    case 0: id = (java.lang.CharSequence)value$; break;
+    case 1: fields = (java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>>)value$; break;
+    case 2: error = (java.lang.CharSequence)value$; break;
+    case 3: time = (java.lang.Long)value$; break;
+    default: throw new org.apache.avro.AvroRuntimeException("Bad index");
+    }
+  }
+
+  /**
+   * Gets the value of the 'id' field.
+   * @return The value of the 'id' field.
+   */
+  public java.lang.CharSequence getId() {
+    return id;
+  }
+
+  /**
+   * Sets the value of the 'id' field.
+   * @param value the value to set.
+   */
+  public void setId(java.lang.CharSequence value) {
+    this.id = value;
+  }
+
+  /**
+   * Gets the value of the 'fields' field.
+   * @return The value of the 'fields' field.
+   */
+  public java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> getFields() {
+    return fields;
+  }
+
+  /**
+   * Sets the value of the 'fields' field.
+   * @param value the value to set.
+   */
+  public void setFields(java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> value) {
+    this.fields = value;
+  }
+
+  /**
+   * Gets the value of the 'error' field.
+   * @return The value of the 'error' field.
+   */
+  public java.lang.CharSequence getError() {
+    return error;
+  }
+
+  /**
+   * Sets the value of the 'error' field.
+   * @param value the value to set.
+   */
+  public void setError(java.lang.CharSequence value) {
+    this.error = value;
+  }
+
+  /**
+   * Gets the value of the 'time' field.
+   * @return The value of the 'time' field.
+   */
+  public java.lang.Long getTime() {
+    return time;
+  }
+
+  /**
+   * Sets the value of the 'time' field.
+   * @param value the value to set.
+   */
+  public void setTime(java.lang.Long value) {
+    this.time = value;
+  }
+
+  /**
+   * Creates a new FailedDocument RecordBuilder.
+   * @return A new FailedDocument RecordBuilder
+   */
+  public static fr.grozeille.avro.FailedDocument.Builder newBuilder() {
+    return new fr.grozeille.avro.FailedDocument.Builder();
+  }
+
+  /**
+   * Creates a new FailedDocument RecordBuilder by copying an existing Builder.
+   * @param other The existing builder to copy.
+   * @return A new FailedDocument RecordBuilder
+   */
+  public static fr.grozeille.avro.FailedDocument.Builder newBuilder(fr.grozeille.avro.FailedDocument.Builder other) {
+    return new fr.grozeille.avro.FailedDocument.Builder(other);
+  }
+
+  /**
+   * Creates a new FailedDocument RecordBuilder by copying an existing FailedDocument instance.
+   * @param other The existing instance to copy.
+   * @return A new FailedDocument RecordBuilder
+   */
+  public static fr.grozeille.avro.FailedDocument.Builder newBuilder(fr.grozeille.avro.FailedDocument other) {
+    return new fr.grozeille.avro.FailedDocument.Builder(other);
+  }
+
+  /**
+   * RecordBuilder for FailedDocument instances.
+   */
+  public static class Builder extends org.apache.avro.specific.SpecificRecordBuilderBase<FailedDocument>
+    implements org.apache.avro.data.RecordBuilder<FailedDocument> {
+
+    private java.lang.CharSequence id;
+    private java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> fields;
+    private java.lang.CharSequence error;
+    private long time;
+
+    /** Creates a new Builder */
+    private Builder() {
+      super(SCHEMA$);
+    }
+
+    /**
+     * Creates a Builder by copying an existing Builder.
+     * @param other The existing Builder to copy.
+     */
+    private Builder(fr.grozeille.avro.FailedDocument.Builder other) {
+      super(other);
+      if (isValidValue(fields()[0], other.id)) {
+        this.id = data().deepCopy(fields()[0].schema(), other.id);
+        fieldSetFlags()[0] = true;
+      }
+      if (isValidValue(fields()[1], other.fields)) {
+        this.fields = data().deepCopy(fields()[1].schema(), other.fields);
+        fieldSetFlags()[1] = true;
+      }
+      if (isValidValue(fields()[2], other.error)) {
+        this.error = data().deepCopy(fields()[2].schema(), other.error);
+        fieldSetFlags()[2] = true;
+      }
+      if (isValidValue(fields()[3], other.time)) {
+        this.time = data().deepCopy(fields()[3].schema(), other.time);
+        fieldSetFlags()[3] = true;
+      }
+    }
+
+    /**
+     * Creates a Builder by copying an existing FailedDocument instance
+     * @param other The existing instance to copy.
+     */
+    private Builder(fr.grozeille.avro.FailedDocument other) {
+            super(SCHEMA$);
+      if (isValidValue(fields()[0], other.id)) {
+        this.id = data().deepCopy(fields()[0].schema(), other.id);
+        fieldSetFlags()[0] = true;
+      }
+      if (isValidValue(fields()[1], other.fields)) {
+        this.fields = data().deepCopy(fields()[1].schema(), other.fields);
+        fieldSetFlags()[1] = true;
+      }
+      if (isValidValue(fields()[2], other.error)) {
+        this.error = data().deepCopy(fields()[2].schema(), other.error);
+        fieldSetFlags()[2] = true;
+      }
+      if (isValidValue(fields()[3], other.time)) {
+        this.time = data().deepCopy(fields()[3].schema(), other.time);
+        fieldSetFlags()[3] = true;
+      }
+    }
+
+    /**
+      * Gets the value of the 'id' field.
+      * @return The value.
+      */
+    public java.lang.CharSequence getId() {
+      return id;
+    }
+
+    /**
+      * Sets the value of the 'id' field.
+      * @param value The value of 'id'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder setId(java.lang.CharSequence value) {
+      validate(fields()[0], value);
+      this.id = value;
+      fieldSetFlags()[0] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'id' field has been set.
+      * @return True if the 'id' field has been set, false otherwise.
+      */
+    public boolean hasId() {
+      return fieldSetFlags()[0];
+    }
+
+
+    /**
+      * Clears the value of the 'id' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder clearId() {
+      id = null;
+      fieldSetFlags()[0] = false;
+      return this;
+    }
+
+    /**
+      * Gets the value of the 'fields' field.
+      * @return The value.
+      */
+    public java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> getFields() {
+      return fields;
+    }
+
+    /**
+      * Sets the value of the 'fields' field.
+      * @param value The value of 'fields'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder setFields(java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>> value) {
+      validate(fields()[1], value);
+      this.fields = value;
+      fieldSetFlags()[1] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'fields' field has been set.
+      * @return True if the 'fields' field has been set, false otherwise.
+      */
+    public boolean hasFields() {
+      return fieldSetFlags()[1];
+    }
+
+
+    /**
+      * Clears the value of the 'fields' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder clearFields() {
+      fields = null;
+      fieldSetFlags()[1] = false;
+      return this;
+    }
+
+    /**
+      * Gets the value of the 'error' field.
+      * @return The value.
+      */
+    public java.lang.CharSequence getError() {
+      return error;
+    }
+
+    /**
+      * Sets the value of the 'error' field.
+      * @param value The value of 'error'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder setError(java.lang.CharSequence value) {
+      validate(fields()[2], value);
+      this.error = value;
+      fieldSetFlags()[2] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'error' field has been set.
+      * @return True if the 'error' field has been set, false otherwise.
+      */
+    public boolean hasError() {
+      return fieldSetFlags()[2];
+    }
+
+
+    /**
+      * Clears the value of the 'error' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder clearError() {
+      error = null;
+      fieldSetFlags()[2] = false;
+      return this;
+    }
+
+    /**
+      * Gets the value of the 'time' field.
+      * @return The value.
+      */
+    public java.lang.Long getTime() {
+      return time;
+    }
+
+    /**
+      * Sets the value of the 'time' field.
+      * @param value The value of 'time'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder setTime(long value) {
+      validate(fields()[3], value);
+      this.time = value;
+      fieldSetFlags()[3] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'time' field has been set.
+      * @return True if the 'time' field has been set, false otherwise.
+      */
+    public boolean hasTime() {
+      return fieldSetFlags()[3];
+    }
+
+
+    /**
+      * Clears the value of the 'time' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.FailedDocument.Builder clearTime() {
+      fieldSetFlags()[3] = false;
+      return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public FailedDocument build() {
+      try {
+        FailedDocument record = new FailedDocument();
+        record.id = fieldSetFlags()[0] ? this.id : (java.lang.CharSequence) defaultValue(fields()[0]);
+        record.fields = fieldSetFlags()[1] ? this.fields : (java.util.Map<java.lang.CharSequence,java.util.List<java.lang.CharSequence>>) defaultValue(fields()[1]);
+        record.error = fieldSetFlags()[2] ? this.error : (java.lang.CharSequence) defaultValue(fields()[2]);
+        record.time = fieldSetFlags()[3] ? this.time : (java.lang.Long) defaultValue(fields()[3]);
+        return record;
+      } catch (java.lang.Exception e) {
+        throw new org.apache.avro.AvroRuntimeException(e);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static final org.apache.avro.io.DatumWriter<FailedDocument>
+    WRITER$ = (org.apache.avro.io.DatumWriter<FailedDocument>)MODEL$.createDatumWriter(SCHEMA$);
+
+  @Override public void writeExternal(java.io.ObjectOutput out)
+    throws java.io.IOException {
+    WRITER$.write(this, SpecificData.getEncoder(out));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static final org.apache.avro.io.DatumReader<FailedDocument>
+    READER$ = (org.apache.avro.io.DatumReader<FailedDocument>)MODEL$.createDatumReader(SCHEMA$);
+
+  @Override public void readExternal(java.io.ObjectInput in)
+    throws java.io.IOException {
+    READER$.read(this, SpecificData.getDecoder(in));
+  }
+
+}
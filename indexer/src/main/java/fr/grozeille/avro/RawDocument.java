@@ -13,8 +13,8 @@ import org.apache.avro.message.SchemaStore;
 @SuppressWarnings("all")
 @org.apache.avro.specific.AvroGenerated
 public class RawDocument extends org.apache.avro.specific.SpecificRecordBase implements org.apache.avro.specific.SpecificRecord {
-  private static final long serialVersionUID = 8388541285375950703L;
-  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"Document\",\"namespace\":\"org.grozeille.avro\",\"fields\":[{\"name\":\"path\",\"type\":\"string\"},{\"name\":\"lang\",\"type\":\"string\"},{\"name\":\"body\",\"type\":{\"type\":\"bytes\",\"java-class\":\"[B\"}}]}");
+  private static final long serialVersionUID = 5681987516955901097L;
+  public static final org.apache.avro.Schema SCHEMA$ = new org.apache.avro.Schema.Parser().parse("{\"type\":\"record\",\"name\":\"RawDocument\",\"namespace\":\"fr.grozeille.avro\",\"fields\":[{\"name\":\"path\",\"type\":\"string\"},{\"name\":\"body\",\"type\":{\"type\":\"bytes\",\"java-class\":\"[B\"}},{\"name\":\"blob\",\"type\":[\"null\",\"string\"],\"default\":null},{\"name\":\"md5\",\"type\":\"string\",\"default\":\"\"},{\"name\":\"sha256\",\"type\":\"string\",\"default\":\"\"},{\"name\":\"size\",\"type\":\"long\",\"default\":-1},{\"name\":\"lastModified\",\"type\":\"long\",\"default\":-1}]}");
   public static org.apache.avro.Schema getClassSchema() { return SCHEMA$; }
 
   private static SpecificData MODEL$ = new SpecificData();
@@ -40,20 +40,24 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
     return new BinaryMessageDecoder<RawDocument>(MODEL$, SCHEMA$, resolver);
   }
 
-  /** Serializes this Document to a ByteBuffer. */
+  /** Serializes this RawDocument to a ByteBuffer. */
   public java.nio.ByteBuffer toByteBuffer() throws java.io.IOException {
     return ENCODER.encode(this);
   }
 
-  /** Deserializes a Document from a ByteBuffer. */
+  /** Deserializes a RawDocument from a ByteBuffer. */
   public static RawDocument fromByteBuffer(
       java.nio.ByteBuffer b) throws java.io.IOException {
     return DECODER.decode(b);
   }
 
   @Deprecated public java.lang.CharSequence path;
-  @Deprecated public java.lang.CharSequence lang;
   @Deprecated public java.nio.ByteBuffer body;
+  @Deprecated public java.lang.CharSequence blob;
+  @Deprecated public java.lang.CharSequence md5;
+  @Deprecated public java.lang.CharSequence sha256;
+  @Deprecated public long size;
+  @Deprecated public long lastModified;
 
   /**
    * Default constructor.  Note that this does not initialize fields
@@ -65,13 +69,21 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
   /**
    * All-args constructor.
    * @param path The new value for path
-   * @param lang The new value for lang
    * @param body The new value for body
+   * @param blob The new value for blob
+   * @param md5 The new value for md5
+   * @param sha256 The new value for sha256
+   * @param size The new value for size
+   * @param lastModified The new value for lastModified
    */
-  public RawDocument(java.lang.CharSequence path, java.lang.CharSequence lang, java.nio.ByteBuffer body) {
+  public RawDocument(java.lang.CharSequence path, java.nio.ByteBuffer body, java.lang.CharSequence blob, java.lang.CharSequence md5, java.lang.CharSequence sha256, java.lang.Long size, java.lang.Long lastModified) {
     this.path = path;
-    this.lang = lang;
     this.body = body;
+    this.blob = blob;
+    this.md5 = md5;
+    this.sha256 = sha256;
+    this.size = size;
+    this.lastModified = lastModified;
   }
 
   public org.apache.avro.Schema getSchema() { return SCHEMA$; }
@@ -79,8 +91,12 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
   public java.lang.Object get(int field$) {
     switch (field$) {
     case 0: return path;
-    case 1: return lang;
-    case 2: return body;
+    case 1: return body;
+    case 2: return blob;
+    case 3: return md5;
+    case 4: return sha256;
+    case 5: return size;
+    case 6: return lastModified;
     default: throw new org.apache.avro.AvroRuntimeException("Bad index");
     }
   }
@@ -90,8 +106,12 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
   public void put(int field$, java.lang.Object value$) {
     switch (field$) {
     case 0: path = (java.lang.CharSequence)value$; break;
-    case 1: lang = (java.lang.CharSequence)value$; break;
-    case 2: body = (java.nio.ByteBuffer)value$; break;
+    case 1: body = (java.nio.ByteBuffer)value$; break;
+    case 2: blob = (java.lang.CharSequence)value$; break;
+    case 3: md5 = (java.lang.CharSequence)value$; break;
+    case 4: sha256 = (java.lang.CharSequence)value$; break;
+    case 5: size = (java.lang.Long)value$; break;
+    case 6: lastModified = (java.lang.Long)value$; break;
     default: throw new org.apache.avro.AvroRuntimeException("Bad index");
     }
   }
@@ -113,72 +133,140 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
   }
 
   /**
-   * Gets the value of the 'lang' field.
-   * @return The value of the 'lang' field.
+   * Gets the value of the 'body' field.
+   * @return The value of the 'body' field.
    */
-  public java.lang.CharSequence getLang() {
-    return lang;
+  public java.nio.ByteBuffer getBody() {
+    return body;
   }
 
   /**
-   * Sets the value of the 'lang' field.
+   * Sets the value of the 'body' field.
    * @param value the value to set.
    */
-  public void setLang(java.lang.CharSequence value) {
-    this.lang = value;
+  public void setBody(java.nio.ByteBuffer value) {
+    this.body = value;
   }
 
   /**
-   * Gets the value of the 'body' field.
-   * @return The value of the 'body' field.
+   * Gets the value of the 'blob' field.
+   * @return The value of the 'blob' field.
    */
-  public java.nio.ByteBuffer getBody() {
-    return body;
+  public java.lang.CharSequence getBlob() {
+    return blob;
   }
 
   /**
-   * Sets the value of the 'body' field.
+   * Sets the value of the 'blob' field.
    * @param value the value to set.
    */
-  public void setBody(java.nio.ByteBuffer value) {
-    this.body = value;
+  public void setBlob(java.lang.CharSequence value) {
+    this.blob = value;
+  }
+
+  /**
+   * Gets the value of the 'md5' field.
+   * @return The value of the 'md5' field.
+   */
+  public java.lang.CharSequence getMd5() {
+    return md5;
+  }
+
+  /**
+   * Sets the value of the 'md5' field.
+   * @param value the value to set.
+   */
+  public void setMd5(java.lang.CharSequence value) {
+    this.md5 = value;
+  }
+
+  /**
+   * Gets the value of the 'sha256' field.
+   * @return The value of the 'sha256' field.
+   */
+  public java.lang.CharSequence getSha256() {
+    return sha256;
+  }
+
+  /**
+   * Sets the value of the 'sha256' field.
+   * @param value the value to set.
+   */
+  public void setSha256(java.lang.CharSequence value) {
+    this.sha256 = value;
+  }
+
+  /**
+   * Gets the value of the 'size' field.
+   * @return The value of the 'size' field.
+   */
+  public java.lang.Long getSize() {
+    return size;
+  }
+
+  /**
+   * Sets the value of the 'size' field.
+   * @param value the value to set.
+   */
+  public void setSize(java.lang.Long value) {
+    this.size = value;
+  }
+
+  /**
+   * Gets the value of the 'lastModified' field.
+   * @return The value of the 'lastModified' field.
+   */
+  public java.lang.Long getLastModified() {
+    return lastModified;
   }
 
   /**
-   * Creates a new Document RecordBuilder.
-   * @return A new Document RecordBuilder
+   * Sets the value of the 'lastModified' field.
+   * @param value the value to set.
    */
-  public static RawDocument.Builder newBuilder() {
-    return new RawDocument.Builder();
+  public void setLastModified(java.lang.Long value) {
+    this.lastModified = value;
   }
 
   /**
-   * Creates a new Document RecordBuilder by copying an existing Builder.
+   * Creates a new RawDocument RecordBuilder.
+   * @return A new RawDocument RecordBuilder
+   */
+  public static fr.grozeille.avro.RawDocument.Builder newBuilder() {
+    return new fr.grozeille.avro.RawDocument.Builder();
+  }
+
+  /**
+   * Creates a new RawDocument RecordBuilder by copying an existing Builder.
    * @param other The existing builder to copy.
-   * @return A new Document RecordBuilder
+   * @return A new RawDocument RecordBuilder
    */
-  public static RawDocument.Builder newBuilder(RawDocument.Builder other) {
-    return new RawDocument.Builder(other);
+  public static fr.grozeille.avro.RawDocument.Builder newBuilder(fr.grozeille.avro.RawDocument.Builder other) {
+    return new fr.grozeille.avro.RawDocument.Builder(other);
   }
 
   /**
-   * Creates a new Document RecordBuilder by copying an existing Document instance.
+   * Creates a new RawDocument RecordBuilder by copying an existing RawDocument instance.
    * @param other The existing instance to copy.
-   * @return A new Document RecordBuilder
+   * @return A new RawDocument RecordBuilder
    */
-  public static RawDocument.Builder newBuilder(RawDocument other) {
-    return new RawDocument.Builder(other);
+  public static fr.grozeille.avro.RawDocument.Builder newBuilder(fr.grozeille.avro.RawDocument other) {
+    return new fr.grozeille.avro.RawDocument.Builder(other);
   }
 
   /**
-   * RecordBuilder for Document instances.
+   * RecordBuilder for RawDocument instances.
    */
   public static class Builder extends org.apache.avro.specific.SpecificRecordBuilderBase<RawDocument>
     implements org.apache.avro.data.RecordBuilder<RawDocument> {
 
     private java.lang.CharSequence path;
-    private java.lang.CharSequence lang;
     private java.nio.ByteBuffer body;
+    private java.lang.CharSequence blob;
+    private java.lang.CharSequence md5;
+    private java.lang.CharSequence sha256;
+    private long size;
+    private long lastModified;
 
     /** Creates a new Builder */
     private Builder() {
@@ -189,40 +277,72 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
      * Creates a Builder by copying an existing Builder.
      * @param other The existing Builder to copy.
      */
-    private Builder(RawDocument.Builder other) {
+    private Builder(fr.grozeille.avro.RawDocument.Builder other) {
       super(other);
       if (isValidValue(fields()[0], other.path)) {
         this.path = data().deepCopy(fields()[0].schema(), other.path);
         fieldSetFlags()[0] = true;
       }
-      if (isValidValue(fields()[1], other.lang)) {
-        this.lang = data().deepCopy(fields()[1].schema(), other.lang);
+      if (isValidValue(fields()[1], other.body)) {
+        this.body = data().deepCopy(fields()[1].schema(), other.body);
         fieldSetFlags()[1] = true;
       }
-      if (isValidValue(fields()[2], other.body)) {
-        this.body = data().deepCopy(fields()[2].schema(), other.body);
+      if (isValidValue(fields()[2], other.blob)) {
+        this.blob = data().deepCopy(fields()[2].schema(), other.blob);
         fieldSetFlags()[2] = true;
       }
+      if (isValidValue(fields()[3], other.md5)) {
+        this.md5 = data().deepCopy(fields()[3].schema(), other.md5);
+        fieldSetFlags()[3] = true;
+      }
+      if (isValidValue(fields()[4], other.sha256)) {
+        this.sha256 = data().deepCopy(fields()[4].schema(), other.sha256);
+        fieldSetFlags()[4] = true;
+      }
+      if (isValidValue(fields()[5], other.size)) {
+        this.size = data().deepCopy(fields()[5].schema(), other.size);
+        fieldSetFlags()[5] = true;
+      }
+      if (isValidValue(fields()[6], other.lastModified)) {
+        this.lastModified = data().deepCopy(fields()[6].schema(), other.lastModified);
+        fieldSetFlags()[6] = true;
+      }
     }
 
     /**
-     * Creates a Builder by copying an existing Document instance
+     * Creates a Builder by copying an existing RawDocument instance
      * @param other The existing instance to copy.
      */
-    private Builder(RawDocument other) {
+    private Builder(fr.grozeille.avro.RawDocument other) {
             super(SCHEMA$);
       if (isValidValue(fields()[0], other.path)) {
         this.path = data().deepCopy(fields()[0].schema(), other.path);
         fieldSetFlags()[0] = true;
       }
-      if (isValidValue(fields()[1], other.lang)) {
-        this.lang = data().deepCopy(fields()[1].schema(), other.lang);
+      if (isValidValue(fields()[1], other.body)) {
+        this.body = data().deepCopy(fields()[1].schema(), other.body);
         fieldSetFlags()[1] = true;
       }
-      if (isValidValue(fields()[2], other.body)) {
-        this.body = data().deepCopy(fields()[2].schema(), other.body);
+      if (isValidValue(fields()[2], other.blob)) {
+        this.blob = data().deepCopy(fields()[2].schema(), other.blob);
         fieldSetFlags()[2] = true;
       }
+      if (isValidValue(fields()[3], other.md5)) {
+        this.md5 = data().deepCopy(fields()[3].schema(), other.md5);
+        fieldSetFlags()[3] = true;
+      }
+      if (isValidValue(fields()[4], other.sha256)) {
+        this.sha256 = data().deepCopy(fields()[4].schema(), other.sha256);
+        fieldSetFlags()[4] = true;
+      }
+      if (isValidValue(fields()[5], other.size)) {
+        this.size = data().deepCopy(fields()[5].schema(), other.size);
+        fieldSetFlags()[5] = true;
+      }
+      if (isValidValue(fields()[6], other.lastModified)) {
+        this.lastModified = data().deepCopy(fields()[6].schema(), other.lastModified);
+        fieldSetFlags()[6] = true;
+      }
     }
 
     /**
@@ -238,7 +358,7 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
       * @param value The value of 'path'.
       * @return This builder.
       */
-    public RawDocument.Builder setPath(java.lang.CharSequence value) {
+    public fr.grozeille.avro.RawDocument.Builder setPath(java.lang.CharSequence value) {
       validate(fields()[0], value);
       this.path = value;
       fieldSetFlags()[0] = true;
@@ -258,98 +378,256 @@ public class RawDocument extends org.apache.avro.specific.SpecificRecordBase imp
       * Clears the value of the 'path' field.
       * @return This builder.
       */
-    public RawDocument.Builder clearPath() {
+    public fr.grozeille.avro.RawDocument.Builder clearPath() {
       path = null;
       fieldSetFlags()[0] = false;
       return this;
     }
 
     /**
-      * Gets the value of the 'lang' field.
+      * Gets the value of the 'body' field.
       * @return The value.
       */
-    public java.lang.CharSequence getLang() {
-      return lang;
+    public java.nio.ByteBuffer getBody() {
+      return body;
     }
 
     /**
-      * Sets the value of the 'lang' field.
-      * @param value The value of 'lang'.
+      * Sets the value of the 'body' field.
+      * @param value The value of 'body'.
       * @return This builder.
       */
-    public RawDocument.Builder setLang(java.lang.CharSequence value) {
+    public fr.grozeille.avro.RawDocument.Builder setBody(java.nio.ByteBuffer value) {
       validate(fields()[1], value);
-      this.lang = value;
+      this.body = value;
       fieldSetFlags()[1] = true;
       return this;
     }
 
     /**
-      * Checks whether the 'lang' field has been set.
-      * @return True if the 'lang' field has been set, false otherwise.
+      * Checks whether the 'body' field has been set.
+      * @return True if the 'body' field has been set, false otherwise.
       */
-    public boolean hasLang() {
+    public boolean hasBody() {
       return fieldSetFlags()[1];
     }
 
 
     /**
-      * Clears the value of the 'lang' field.
+      * Clears the value of the 'body' field.
       * @return This builder.
       */
-    public RawDocument.Builder clearLang() {
-      lang = null;
+    public fr.grozeille.avro.RawDocument.Builder clearBody() {
+      body = null;
       fieldSetFlags()[1] = false;
       return this;
     }
 
     /**
-      * Gets the value of the 'body' field.
+      * Gets the value of the 'blob' field.
       * @return The value.
       */
-    public java.nio.ByteBuffer getBody() {
-      return body;
+    public java.lang.CharSequence getBlob() {
+      return blob;
     }
 
     /**
-      * Sets the value of the 'body' field.
-      * @param value The value of 'body'.
+      * Sets the value of the 'blob' field.
+      * @param value The value of 'blob'.
       * @return This builder.
       */
-    public RawDocument.Builder setBody(java.nio.ByteBuffer value) {
+    public fr.grozeille.avro.RawDocument.Builder setBlob(java.lang.CharSequence value) {
       validate(fields()[2], value);
-      this.body = value;
+      this.blob = value;
       fieldSetFlags()[2] = true;
       return this;
     }
 
     /**
-      * Checks whether the 'body' field has been set.
-      * @return True if the 'body' field has been set, false otherwise.
+      * Checks whether the 'blob' field has been set.
+      * @return True if the 'blob' field has been set, false otherwise.
       */
-    public boolean hasBody() {
+    public boolean hasBlob() {
       return fieldSetFlags()[2];
     }
 
 
     /**
-      * Clears the value of the 'body' field.
+      * Clears the value of the 'blob' field.
       * @return This builder.
       */
-    public RawDocument.Builder clearBody() {
-      body = null;
+    public fr.grozeille.avro.RawDocument.Builder clearBlob() {
+      blob = null;
       fieldSetFlags()[2] = false;
       return this;
     }
 
+    /**
+      * Gets the value of the 'md5' field.
+      * @return The value.
+      */
+    public java.lang.CharSequence getMd5() {
+      return md5;
+    }
+
+    /**
+      * Sets the value of the 'md5' field.
+      * @param value The value of 'md5'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder setMd5(java.lang.CharSequence value) {
+      validate(fields()[3], value);
+      this.md5 = value;
+      fieldSetFlags()[3] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'md5' field has been set.
+      * @return True if the 'md5' field has been set, false otherwise.
+      */
+    public boolean hasMd5() {
+      return fieldSetFlags()[3];
+    }
+
+
+    /**
+      * Clears the value of the 'md5' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder clearMd5() {
+      md5 = null;
+      fieldSetFlags()[3] = false;
+      return this;
+    }
+
+    /**
+      * Gets the value of the 'sha256' field.
+      * @return The value.
+      */
+    public java.lang.CharSequence getSha256() {
+      return sha256;
+    }
+
+    /**
+      * Sets the value of the 'sha256' field.
+      * @param value The value of 'sha256'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder setSha256(java.lang.CharSequence value) {
+      validate(fields()[4], value);
+      this.sha256 = value;
+      fieldSetFlags()[4] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'sha256' field has been set.
+      * @return True if the 'sha256' field has been set, false otherwise.
+      */
+    public boolean hasSha256() {
+      return fieldSetFlags()[4];
+    }
+
+
+    /**
+      * Clears the value of the 'sha256' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder clearSha256() {
+      sha256 = null;
+      fieldSetFlags()[4] = false;
+      return this;
+    }
+
+    /**
+      * Gets the value of the 'size' field.
+      * @return The value.
+      */
+    public java.lang.Long getSize() {
+      return size;
+    }
+
+    /**
+      * Sets the value of the 'size' field.
+      * @param value The value of 'size'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder setSize(long value) {
+      validate(fields()[5], value);
+      this.size = value;
+      fieldSetFlags()[5] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'size' field has been set.
+      * @return True if the 'size' field has been set, false otherwise.
+      */
+    public boolean hasSize() {
+      return fieldSetFlags()[5];
+    }
+
+
+    /**
+      * Clears the value of the 'size' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder clearSize() {
+      fieldSetFlags()[5] = false;
+      return this;
+    }
+
+    /**
+      * Gets the value of the 'lastModified' field.
+      * @return The value.
+      */
+    public java.lang.Long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+      * Sets the value of the 'lastModified' field.
+      * @param value The value of 'lastModified'.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder setLastModified(long value) {
+      validate(fields()[6], value);
+      this.lastModified = value;
+      fieldSetFlags()[6] = true;
+      return this;
+    }
+
+    /**
+      * Checks whether the 'lastModified' field has been set.
+      * @return True if the 'lastModified' field has been set, false otherwise.
+      */
+    public boolean hasLastModified() {
+      return fieldSetFlags()[6];
+    }
+
+
+    /**
+      * Clears the value of the 'lastModified' field.
+      * @return This builder.
+      */
+    public fr.grozeille.avro.RawDocument.Builder clearLastModified() {
+      fieldSetFlags()[6] = false;
+      return this;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public RawDocument build() {
       try {
         RawDocument record = new RawDocument();
         record.path = fieldSetFlags()[0] ? this.path : (java.lang.CharSequence) defaultValue(fields()[0]);
-        record.lang = fieldSetFlags()[1] ? this.lang : (java.lang.CharSequence) defaultValue(fields()[1]);
-        record.body = fieldSetFlags()[2] ? this.body : (java.nio.ByteBuffer) defaultValue(fields()[2]);
+        record.body = fieldSetFlags()[1] ? this.body : (java.nio.ByteBuffer) defaultValue(fields()[1]);
+        record.blob = fieldSetFlags()[2] ? this.blob : (java.lang.CharSequence) defaultValue(fields()[2]);
+        record.md5 = fieldSetFlags()[3] ? this.md5 : (java.lang.CharSequence) defaultValue(fields()[3]);
+        record.sha256 = fieldSetFlags()[4] ? this.sha256 : (java.lang.CharSequence) defaultValue(fields()[4]);
+        record.size = fieldSetFlags()[5] ? this.size : (java.lang.Long) defaultValue(fields()[5]);
+        record.lastModified = fieldSetFlags()[6] ? this.lastModified : (java.lang.Long) defaultValue(fields()[6]);
         return record;
       } catch (java.lang.Exception e) {
         throw new org.apache.avro.AvroRuntimeException(e);
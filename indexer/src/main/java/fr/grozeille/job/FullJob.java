@@ -1,2 +1,327 @@
-package fr.grozeille.job;public class FullJob {
+package fr.grozeille.job;
+
+import fr.grozeille.AdaptiveBatchSize;
+import fr.grozeille.BisectingRetry;
+import fr.grozeille.BlobStore;
+import fr.grozeille.ChangeManifest;
+import fr.grozeille.DeadLetterFile;
+import fr.grozeille.DocumentIndexer;
+import fr.grozeille.DocumentParser;
+import fr.grozeille.ExtractDocument;
+import fr.grozeille.LanguageDetectionService;
+import fr.grozeille.ParseCache;
+import fr.grozeille.SolrBulkLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.cli.*;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.language.detect.LanguageResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Spark version of DocumentExtractor (and optionally DocumentIndexer): reads the RawDocument avro files written by CopyToAvro,
+ * parses the documents and detects their language in the executors and writes the ParsedDocument avro files.
+ * The parser, the language models and the parse cache are created once per executor and reused by all the partitions.
+ * <pre>
+ * spark-submit --master local[4] --class fr.grozeille.job.FullJob indexer.jar -i raw -o parsed
+ * </pre>
+ */
+@Slf4j
+public class FullJob {
+
+    private static final int solrBatchSize = 100;
+
+    // the partitions are already sent in parallel
+    private static final int solrThreads = 1;
+
+    private static final long parseCacheSize = 1024l*1024l*64l;
+
+    public static final StructType parsedDocumentSchema = new StructType()
+            .add("path", DataTypes.StringType, false)
+            .add("md5", DataTypes.StringType, false)
+            .add("name", DataTypes.StringType, false)
+            .add("extension", DataTypes.StringType, false)
+            .add("lang", DataTypes.StringType, false)
+            .add("body", DataTypes.StringType, false);
+
+    public static void main(String[] args) throws Exception {
+        Option inputOption  = OptionBuilder.withArgName( "input" )
+                .isRequired()
+                .hasArgs()
+                .withDescription( "Input path, output of CopyToAvro (local or hdfs)." )
+                .create( "i" );
+        Option outputOption  = OptionBuilder.withArgName( "output" )
+                .isRequired()
+                .hasArgs()
+                .withDescription( "Output path for avro files." )
+                .create( "o" );
+        Option metadataFallbackOption  = OptionBuilder.withArgName( "metadata-fallback" )
+                .withDescription( "Read the PDF/DOC/DOCX/PPTX metadata again with PDFBox/POI when Tika misses some fields." )
+                .create( "m" );
+        Option partitionsOption  = OptionBuilder.withArgName( "partitions" )
+                .withLongOpt( "partitions" )
+                .hasArg()
+                .withDescription( "Number of partitions of the documents, default is one per avro block range read by Spark." )
+                .create( "p" );
+        Option solrUrlOption  = OptionBuilder.withArgName( "solr-url" )
+                .withLongOpt( "solr-url" )
+                .hasArg()
+                .withDescription( "Index the parsed documents in this Solr core (ex: http://localhost:8983/solr/documents)." )
+                .create( "u" );
+        Option commitWithinOption  = OptionBuilder.withArgName( "commit-within" )
+                .withLongOpt( "commit-within" )
+                .hasArg()
+                .withDescription( "Max delay (ms) before the indexed documents are visible, default is " + SolrBulkLoader.DEFAULT_COMMIT_WITHIN + ". A single commit is done at the end." )
+                .create( "w" );
+        Option deadLetterOption  = OptionBuilder.withArgName( "dead-letter" )
+                .withLongOpt( "dead-letter" )
+                .hasArg()
+                .withDescription( "Folder of the documents rejected by Solr, on each executor, default is " + DeadLetterFile.DEFAULT_FOLDER + "." )
+                .create( "d" );
+        Option masterOption  = OptionBuilder.withArgName( "master" )
+                .withLongOpt( "master" )
+                .hasArg()
+                .withDescription( "Spark master when not launched by spark-submit (ex: local[4])." )
+                .create();
+
+        Options options = new Options();
+        options.addOption(inputOption);
+        options.addOption(outputOption);
+        options.addOption(metadataFallbackOption);
+        options.addOption(partitionsOption);
+        options.addOption(solrUrlOption);
+        options.addOption(masterOption);
+        options.addOption(commitWithinOption);
+        options.addOption(deadLetterOption);
+
+        // create the parser
+        CommandLineParser parser = new BasicParser();
+        CommandLine line = null;
+        try {
+            // parse the command line arguments
+            line = parser.parse( options, args );
+        }
+        catch( ParseException exp ) {
+            // oops, something went wrong
+            System.err.println( "Parsing failed.  Reason: " + exp.getMessage() );
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printHelp( "FullJob", options );
+
+            System.exit(-1);
+        }
+
+        String inputPath = line.getOptionValue("i");
+        String outputPath = line.getOptionValue("o");
+        boolean metadataFallback = line.hasOption("m");
+        String solrUrl = line.getOptionValue("u");
+        int commitWithin = Integer.parseInt(line.getOptionValue("w", String.valueOf(SolrBulkLoader.DEFAULT_COMMIT_WITHIN)));
+        String deadLetterFolder = line.getOptionValue("d", DeadLetterFile.DEFAULT_FOLDER);
+
+        SparkConf conf = new SparkConf().setAppName("document-analysis-full-job");
+        if(line.hasOption("master")) {
+            conf.setMaster(line.getOptionValue("master"));
+        }
+
+        SparkSession spark = SparkSession.builder().config(conf).getOrCreate();
+        try {
+            // only the avro files, not the blobs folder or the list of deleted files
+            // the files written by the previous versions of CopyToAvro are read with the defaults of the new fields
+            Dataset<Row> rawDocuments = spark.read()
+                    .format("avro")
+                    .option("avroSchema", fr.grozeille.avro.RawDocument.getClassSchema().toString())
+                    .load(inputPath + "/*.avro");
+            if(line.hasOption("p")) {
+                rawDocuments = rawDocuments.repartition(Integer.parseInt(line.getOptionValue("p")));
+            }
+
+            JavaRDD<Row> parsedDocuments = rawDocuments.javaRDD()
+                    .mapPartitions(rows -> extractPartition(rows, inputPath, metadataFallback));
+
+            Dataset<Row> parsed = spark.createDataFrame(parsedDocuments, parsedDocumentSchema);
+            if(solrUrl != null) {
+                // parsed once, written and indexed
+                parsed = parsed.persist();
+            }
+
+            parsed.write()
+                    .format("avro")
+                    .option("recordName", "ParsedDocument")
+                    .option("recordNamespace", "fr.grozeille.avro")
+                    .mode(SaveMode.ErrorIfExists)
+                    .save(outputPath);
+            copyMarkers(spark.sparkContext().hadoopConfiguration(), inputPath, outputPath);
+
+            if(solrUrl != null) {
+                parsed.javaRDD().foreachPartition(rows -> index(rows, solrUrl, commitWithin, deadLetterFolder));
+                parsed.unpersist();
+
+                try(HttpSolrClient solrClient = new HttpSolrClient.Builder().withBaseSolrUrl(solrUrl).build()) {
+                    solrClient.commit();
+                }
+            }
+        }
+        finally {
+            spark.stop();
+        }
+    }
+
+    /**
+     * The deleted files reported by an incremental CopyToAvro, or the mark of a complete copy, are passed to DocumentIndexer.
+     */
+    private static void copyMarkers(Configuration hadoopConfiguration, String inputPath, String outputPath) throws IOException {
+        for(String markerName : new String[]{ChangeManifest.DELETED_FILE_NAME, ChangeManifest.COMPLETE_FILE_NAME}) {
+            Path marker = new Path(inputPath, markerName);
+            FileSystem fs = marker.getFileSystem(hadoopConfiguration);
+            if(fs.exists(marker)) {
+                Path copy = new Path(outputPath, markerName);
+                FileUtil.copy(fs, marker, copy.getFileSystem(hadoopConfiguration), copy, false, hadoopConfiguration);
+            }
+        }
+    }
+
+    /**
+     * Lazily parses the documents of a partition, the records are not all kept in memory.
+     */
+    private static Iterator<Row> extractPartition(Iterator<Row> rows, String inputPath, boolean metadataFallback) throws IOException {
+        Extractors extractors = Extractors.get(metadataFallback);
+
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                return extract(rows.next(), inputPath, extractors);
+            }
+        };
+    }
+
+    private static Row extract(Row rawDocument, String inputPath, Extractors extractors) {
+        String path = rawDocument.getAs("path");
+        String name = new File(path).getName();
+        String extension = FilenameUtils.getExtension(name);
+
+        String blob = getString(rawDocument, "blob");
+        String md5 = blob != null ? blob : getString(rawDocument, "md5");
+        if(md5 == null || md5.isEmpty()) {
+            md5 = DigestUtils.md5Hex((byte[]) rawDocument.getAs("body"));
+        }
+        md5 = md5.toUpperCase();
+
+        // the copies of a document are only parsed once per executor
+        ParseCache.Entry extraction = extractors.parseCache.get(md5);
+        if(extraction == null) {
+            ExtractDocument extractDocument;
+            if(blob != null) {
+                extractDocument = parseBlob(inputPath, path, blob, extractors.documentParser);
+            }
+            else {
+                extractDocument = extractors.documentParser.parseBody(path, (byte[]) rawDocument.getAs("body"));
+            }
+
+            String body = extractDocument.getHtmlBody();
+            String lang = "";
+            LanguageResult result = extractors.detector.detect(body);
+            if(result.isReasonablyCertain()) {
+                lang = result.getLanguage();
+            }
+            else {
+                log.warn("Unable to detect language " + path);
+            }
+
+            extraction = new ParseCache.Entry(body, lang);
+            extractors.parseCache.put(md5, extraction);
+        }
+
+        return RowFactory.create(path, md5, name, extension, extraction.getLang(), extraction.getHtmlBody());
+    }
+
+    private static ExtractDocument parseBlob(String inputPath, String path, String blob, DocumentParser documentParser) {
+        // the blobs are next to the avro files, on the local file system or on hdfs
+        Path blobPath = new Path(inputPath, BlobStore.FOLDER_NAME + "/" + blob);
+        try {
+            FileSystem fs = blobPath.getFileSystem(new Configuration());
+            try(InputStream stream = TikaInputStream.get(fs.open(blobPath))) {
+                return documentParser.parseBody(path, stream);
+            }
+        }
+        catch(IOException ex) {
+            log.error("Unable to read blob " + blobPath + " of " + path, ex);
+            ExtractDocument extractDocument = new ExtractDocument();
+            extractDocument.setHtmlBody("");
+            return extractDocument;
+        }
+    }
+
+    /**
+     * Sends the documents of a partition with commitWithin, the rejected documents go to a dead letter file of the executor.
+     * The partitions don't commit, the driver commits once when all of them are indexed.
+     */
+    private static void index(Iterator<Row> rows, String solrUrl, int commitWithin, String deadLetterFolder) throws Exception {
+        try(HttpSolrClient solrClient = new HttpSolrClient.Builder().withBaseSolrUrl(solrUrl).build();
+            DeadLetterFile deadLetterFile = new DeadLetterFile(new File(deadLetterFolder));
+            SolrBulkLoader loader = new SolrBulkLoader(solrClient,
+                    new AdaptiveBatchSize(solrBatchSize, AdaptiveBatchSize.DEFAULT_MAX_BYTES, AdaptiveBatchSize.DEFAULT_TARGET_LATENCY),
+                    solrThreads, commitWithin, SolrBulkLoader.Commit.NONE,
+                    new BisectingRetry(BisectingRetry.DEFAULT_RETRIES, BisectingRetry.DEFAULT_BACKOFF, deadLetterFile))) {
+            while(rows.hasNext()) {
+                Row row = rows.next();
+                loader.add(DocumentIndexer.toSolrDocument(
+                        row.getAs("path"), row.getAs("md5"), row.getAs("name"), row.getAs("extension"), row.getAs("lang"), row.getAs("body")));
+            }
+        }
+    }
+
+    private static String getString(Row row, String field) {
+        Object value = row.getAs(field);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Extraction engine shared by all the tasks of an executor.
+     */
+    private static class Extractors {
+        private static Extractors instance = null;
+
+        private final DocumentParser documentParser;
+
+        private final LanguageDetectionService detector;
+
+        private final ParseCache parseCache;
+
+        private Extractors(boolean metadataFallback) throws IOException {
+            this.documentParser = new DocumentParser(metadataFallback);
+            this.detector = new LanguageDetectionService(Collections.emptyList(), LanguageDetectionService.DEFAULT_MAX_CHARS);
+            this.parseCache = new ParseCache(parseCacheSize);
+        }
+
+        private static synchronized Extractors get(boolean metadataFallback) throws IOException {
+            if(instance == null) {
+                instance = new Extractors(metadataFallback);
+            }
+            return instance;
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package fr.grozeille;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MinHashTest {
+
+    /**
+     * The indexer and the api must compute the same signatures: the same values are pinned in the MinHashTest of the other module.
+     */
+    @Test
+    public void signatureOfAFixedText() {
+        int[] signature = MinHash.signature("Near duplicates are found with the bands of their MinHash signatures, computed by the indexer and by the api.");
+
+        assertArrayEquals(new int[]{-1043562979, -1346882710, -1522963232, -1969796773}, Arrays.copyOf(signature, 4));
+        assertEquals(-358143234, Arrays.hashCode(signature));
+        assertEquals(Arrays.asList("0_96fc030cafd24d02", "1_14c470dda941577e", "2_dee461c2302a4280", "3_e5b5a701a357bcfb",
+                "4_7f5598c9b5703d88", "5_8ec37526e20870f", "6_a6dcdc7db7d38e7", "7_f5421c913967401",
+                "8_be5eec9466c71b0a", "9_830177446dfd", "10_ddbb318e8689dac9", "11_40759bf44eb0b6d9",
+                "12_f3c89b79709a95ad", "13_5ec6ffb463c689af", "14_93c41c0dd65e9cf9", "15_4224ad578bd72ae9"), MinHash.bands(signature));
+    }
+}
@@ -0,0 +1,73 @@
+package fr.grozeille.job;
+
+import fr.grozeille.avro.RawDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+public class FullJobIT {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test() throws Exception {
+        File inputFolder = folder.newFolder("raw");
+        File outputFolder = new File(folder.getRoot(), "parsed");
+
+        try(DataFileWriter<RawDocument> writer = new DataFileWriter<>(new SpecificDatumWriter<>(RawDocument.class))) {
+            writer.create(RawDocument.getClassSchema(), new File(inputFolder, "0.avro"));
+            writer.append(rawDocument("a/hello.txt", "hello world, this is a text document"));
+            writer.append(rawDocument("b/hello-copy.txt", "hello world, this is a text document"));
+            writer.append(rawDocument("b/other.txt", "another text document"));
+        }
+
+        FullJob.main(new String[] { "-i", inputFolder.getAbsolutePath(), "-o", outputFolder.getAbsolutePath(), "--master", "local[2]" });
+
+        Map<String, GenericRecord> parsed = new HashMap<>();
+        for(File file : outputFolder.listFiles((dir, name) -> name.endsWith(".avro"))) {
+            try(DataFileReader<GenericRecord> reader = new DataFileReader<>(file, new GenericDatumReader<>())) {
+                for(GenericRecord record : reader) {
+                    log.info("Parsed: " + record.get("path"));
+                    parsed.put(record.get("path").toString(), record);
+                }
+            }
+        }
+
+        Assert.assertEquals(3, parsed.size());
+        GenericRecord hello = parsed.get("a/hello.txt");
+        Assert.assertEquals("hello.txt", hello.get("name").toString());
+        Assert.assertEquals("txt", hello.get("extension").toString());
+        Assert.assertEquals(DigestUtils.md5Hex("hello world, this is a text document").toUpperCase(), hello.get("md5").toString());
+        Assert.assertTrue(hello.get("body").toString().contains("hello world"));
+        Assert.assertEquals(hello.get("body").toString(), parsed.get("b/hello-copy.txt").get("body").toString());
+    }
+
+    private static RawDocument rawDocument(String path, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        RawDocument rawDocument = new RawDocument();
+        rawDocument.setPath(path);
+        rawDocument.setBody(ByteBuffer.wrap(bytes));
+        rawDocument.setMd5(DigestUtils.md5Hex(bytes));
+        rawDocument.setSha256(DigestUtils.sha256Hex(bytes));
+        rawDocument.setSize((long) bytes.length);
+        rawDocument.setLastModified(0l);
+        return rawDocument;
+    }
+}
@@ -1,6 +1,7 @@
 export class SearchResult {
   documents: Array<SearchResultItem>;
   numFound: number;
+  nextCursor?: string;
   constructor() {
     this.documents = new Array<SearchResultItem>();
     this.numFound = 0;
@@ -14,6 +15,7 @@ export class SearchResultItem {
   name: string;
   body: string;
   tags: Array<string>;
+  similarity?: number;
 
   constructor() {
     this.id = "";
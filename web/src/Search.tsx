@@ -48,6 +48,7 @@ export interface SearchState {
   searchMessage: string;
   showMore: boolean;
   currentPage: number;
+  nextCursor?: string;
   searchQuery: string;
 }
 
@@ -132,7 +133,7 @@ class Search extends React.Component<SearchProps, SearchState> {
     var nextPage = this.state.currentPage + 1;
 
     var url = "/api/v1/documents/?query=" + encodeURIComponent(this.state.searchQuery) + 
-      "&page=" + nextPage;
+      "&cursor=" + encodeURIComponent(this.state.nextCursor!);
 
     fetch(url)
       .then(this.handleErrors)
@@ -147,8 +148,9 @@ class Search extends React.Component<SearchProps, SearchState> {
 
             return {
               currentPage: nextPage,
+              nextCursor: result.nextCursor,
               searchResultItems: searchResultItems,
-              showMore: (nextPage + 1) * 20 < result.numFound,
+              showMore: result.nextCursor !== undefined && result.nextCursor !== null,
             }
           });
         },
@@ -206,14 +208,15 @@ class Search extends React.Component<SearchProps, SearchState> {
           
           console.log(result);
 
-          this.setState(state => {
+          this.setState(() => {
             const searchResultItems = new Array<Array<SearchResultItem>>();
             searchResultItems.push(result.documents);
 
             return {
               searchResultItems: searchResultItems,
               searchMessage: result.numFound + " résultats",
-              showMore: (state.currentPage + 1) * 20 < result.numFound,
+              nextCursor: result.nextCursor,
+              showMore: result.nextCursor !== undefined && result.nextCursor !== null,
             }
           });
         },